@@ -0,0 +1,283 @@
+package main;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/********************************************************************
+ * Longest prefix match with a Bloom filter per prefix length in
+ * front of the PrefixHashTable of that length (Dharmapurikar,
+ * Krishnamurthy and Taylor). A lookup first asks the filter of every
+ * length in use whether it may hold the address's prefix of that
+ * length, which only reads the small filters, then probes the hash
+ * tables of the lengths that answered yes, longest first, until one
+ * holds the prefix. Only that last probe usually leaves the cache;
+ * a filter answering yes for a prefix its table does not hold is a
+ * false positive and costs an extra probe.
+ *
+ * The lengths in use are a bit mask, bit l - 1 for length l, so the
+ * lengths to query and to probe are both walked with bit tricks.
+ * The default route has no filter or table.
+ *
+ * Routes are kept in a PrefixRoutes and the filters and tables are
+ * built on the first lookup after a change. With -Dmain.lookupStats=true the
+ * probes and false positives are counted, see
+ * getFalsePositiveRate().
+ *
+ * @author agent
+ * @version Oct 17, 2026
+ *******************************************************************/
+public class BloomFilterTable implements RoutingTable {
+	
+	/** Filter bits per prefix, rounded up to a power of two */
+	private static final int BITS_PER_PREFIX = 12;
+	
+	/** Number of bits a prefix sets in its filter */
+	private static final int NUM_HASHES = 3;
+	
+	/** Every route added and the filters compiled from them */
+	private PrefixRoutes<Filters> routes;
+	
+	private NextHopTable nextHops;
+	
+	private final LongAdder lookups = new LongAdder();
+	private final LongAdder probes = new LongAdder();
+	private final LongAdder falsePositives = new LongAdder();
+	
+	public BloomFilterTable() {
+		this(new NextHopTable());
+	}
+	
+	/****************************************************************
+	 * @param nextHops the table interning the next hops, which may
+	 *        be shared with other tables.
+	 ***************************************************************/
+	public BloomFilterTable(NextHopTable nextHops) {
+		this.nextHops = nextHops;
+		
+		routes = new PrefixRoutes<Filters>(nextHops) {
+			protected Filters compile() {
+				return build();
+			}
+		};
+	}
+	
+	public void add(String prefix, int prefixLength, String nextHop) {
+		routes.add(prefix, prefixLength, nextHop);
+	}
+	
+	public void add(int prefix, int prefixLength, String nextHop) {
+		routes.add(prefix, prefixLength, nextHop);
+	}
+	
+	public void add(int prefix, int prefixLength, int hop) {
+		routes.add(prefix, prefixLength, hop);
+	}
+	
+	public String lookUp(String ipAddr) {
+		return nextHops.get(lookUp(Trie.convertIPtoInt(ipAddr, 32)));
+	}
+	
+	public int lookUp(int ipv4) {
+		Filters f = routes.get();
+		
+		/* Queries every filter, keeping the lengths that may match */
+		int candidates = 0;
+		
+		for (int lengths = f.lengthMask; lengths != 0; lengths &= lengths - 1) {
+			int length = Integer.numberOfTrailingZeros(lengths) + 1;
+			
+			if (f.mightContain(length, ipv4 >>> (32 - length))) {
+				candidates |= 1 << (length - 1);
+			}
+		}
+		
+		/* Probes the candidates, longest first */
+		int probed = 0;
+		int hop = f.defaultHop;
+		
+		while (candidates != 0) {
+			int length = 32 - Integer.numberOfLeadingZeros(candidates);
+			int found = f.byLength[length].get(ipv4 >>> (32 - length));
+			
+			probed++;
+			
+			if (found != PrefixHashTable.MISSING) {
+				hop = found;
+				break;
+			}
+			
+			candidates &= ~(1 << (length - 1));
+		}
+		
+		if (LookupStats.ENABLED) {
+			lookups.increment();
+			probes.add(probed);
+			
+			/* Every probe but a successful last one was a false positive */
+			int wasted = candidates == 0 ? probed : probed - 1;
+			if (wasted > 0) falsePositives.add(wasted);
+		}
+		
+		return hop;
+	}
+	
+	public String getNextHop(int index) {
+		return nextHops.get(index);
+	}
+	
+	public NextHopTable getNextHops() {
+		return nextHops;
+	}
+	
+	/****************************************************************
+	 * @return the number of prefix lengths in use, each having a
+	 *         filter and a table.
+	 ***************************************************************/
+	public int getNumNodes() {
+		Filters f = routes.get();
+		
+		return Integer.bitCount(f.lengthMask);
+	}
+	
+	public int getNumPrefixes() {
+		return routes.size();
+	}
+	
+	/****************************************************************
+	 * @return the average number of hash table probes per lookup,
+	 *         counted only with -Dmain.lookupStats=true.
+	 ***************************************************************/
+	public double getProbesPerLookup() {
+		long count = lookups.sum();
+		
+		return count == 0 ? 0 : probes.sum() / (double) count;
+	}
+	
+	/****************************************************************
+	 * @return the share of hash table probes made because of a false
+	 *         positive of a filter, counted only with
+	 *         -Dmain.lookupStats=true.
+	 ***************************************************************/
+	public double getFalsePositiveRate() {
+		long count = probes.sum();
+		
+		return count == 0 ? 0 : falsePositives.sum() / (double) count;
+	}
+	
+	/****************************************************************
+	 * Counts the filter and table of each length as a node of that
+	 * level with a child per prefix, then the routes and the next
+	 * hops.
+	 *
+	 * @return the memory report.
+	 ***************************************************************/
+	public MemoryReport getMemoryReport() {
+		Filters f = routes.get();
+		
+		MemoryReport report = new MemoryReport("BloomFilterTable", 33);
+		
+		for (int length = 1; length <= 32; length++) {
+			if (f.byLength[length] == null) continue;
+			
+			report.addNode(length, f.byLength[length].getBytes()
+					+ MemoryReport.arrayBytes(f.bloom[length].length, 8),
+					f.byLength[length].size());
+		}
+		
+		report.addPart("routes", routes.getBytes());
+		report.addPart("next hops", MemoryReport.nextHopBytes(nextHops));
+		
+		return report;
+	}
+	
+	/****************************************************************
+	 * Builds the filters and tables from the routes, called by routes
+	 * holding its lock.
+	 ***************************************************************/
+	private Filters build() {
+		Filters f = new Filters();
+		int count = routes.size();
+		
+		int[] counts = new int[33];
+		
+		for (int i = 0; i < count; i++) counts[routes.getLength(i)]++;
+		
+		for (int length = 1; length <= 32; length++) {
+			if (counts[length] == 0) continue;
+			
+			int bits = Integer.highestOneBit(
+					Math.max(64, counts[length] * BITS_PER_PREFIX - 1)) << 1;
+			
+			f.lengthMask |= 1 << (length - 1);
+			f.byLength[length] = new PrefixHashTable(counts[length]);
+			f.bloom[length] = new long[bits / 64];
+		}
+		
+		for (int i = 0; i < count; i++) {
+			int length = routes.getLength(i);
+			
+			if (length == 0) {
+				f.defaultHop = routes.getHop(i);
+			} else {
+				int bits = routes.getPrefix(i) >>> (32 - length);
+				
+				f.byLength[length].put(bits, routes.getHop(i));
+				f.insert(length, bits);
+			}
+		}
+		
+		return f;
+	}
+	
+	/****************************************************************
+	 * The filters and tables of one compiled version, never changed
+	 * once built.
+	 ***************************************************************/
+	private static class Filters {
+		
+		/** Bit l - 1 set if prefixes of length l are in use */
+		int lengthMask;
+		
+		/** The filter bits of each length, null if not in use */
+		long[][] bloom = new long[33][];
+		
+		/** The table of each length, null if not in use */
+		PrefixHashTable[] byLength = new PrefixHashTable[33];
+		
+		int defaultHop = NextHopTable.NO_MATCH;
+		
+		void insert(int length, int bits) {
+			long[] filter = bloom[length];
+			int mask = filter.length * 64 - 1;
+			
+			long hash = (bits & 0xFFFFFFFFL) * 0x9E3779B97F4A7C15L;
+			int h1 = (int) (hash >>> 32);
+			int h2 = (int) hash | 1;
+			
+			for (int i = 0; i < NUM_HASHES; i++) {
+				int bit = (h1 + i * h2) & mask;
+				filter[bit >>> 6] |= 1L << bit;
+			}
+		}
+		
+		/****************************************************************
+		 * @return false if no prefix of the length has these bits,
+		 *         true if one may have.
+		 ***************************************************************/
+		boolean mightContain(int length, int bits) {
+			long[] filter = bloom[length];
+			int mask = filter.length * 64 - 1;
+			
+			long hash = (bits & 0xFFFFFFFFL) * 0x9E3779B97F4A7C15L;
+			int h1 = (int) (hash >>> 32);
+			int h2 = (int) hash | 1;
+			
+			for (int i = 0; i < NUM_HASHES; i++) {
+				int bit = (h1 + i * h2) & mask;
+				
+				if ((filter[bit >>> 6] & (1L << bit)) == 0) return false;
+			}
+			
+			return true;
+		}
+	}
+}
@@ -0,0 +1,249 @@
+package main;
+
+/********************************************************************
+ * A read only, leaf-pushed and path compressed copy of a Trie.
+ *
+ * Leaf pushing moves every next hop down into the child slots it
+ * covers, so each slot holds either a child node or the next hop
+ * for the addresses under it and lookups never track a best match.
+ * Leaves of the Trie disappear into their parents' slots.
+ *
+ * Path compression then removes nodes with a single child whose
+ * other slots all hold the same next hop: the child instead starts
+ * with skip bits that the address must match, and skipHop is the
+ * result when it does not.
+ *
+ * @author agent
+ * @version Oct 17, 2026
+ *******************************************************************/
+public class CompressedTrie implements RoutingTable {
+	
+	private Node root;
+	
+	private NextHopTable nextHops;
+	
+	/** Number of levels of the Trie, which no path here exceeds */
+	private int numLevels;
+	
+	private int numNodes;
+	private int numPrefixes;
+	
+	/****************************************************************
+	 * Compiles the given Trie. Use Trie.compress().
+	 *
+	 * @param trie the Trie to copy.
+	 ***************************************************************/
+	CompressedTrie(Trie trie) {
+		nextHops = trie.getNextHops();
+		numPrefixes = trie.getNumPrefixes();
+		numLevels = trie.getStrides().length;
+		
+		root = build(trie.getRoot(), trie.getStrides(),
+				NextHopTable.NO_MATCH);
+	}
+	
+	/****************************************************************
+	 * Not supported, a CompressedTrie is read only.
+	 ***************************************************************/
+	public void add(String prefix, int prefixLength, String nextHop) {
+		throw new UnsupportedOperationException("CompressedTrie is read only");
+	}
+	
+	public void add(int prefix, int prefixLength, String nextHop) {
+		throw new UnsupportedOperationException("CompressedTrie is read only");
+	}
+	
+	public void add(int prefix, int prefixLength, int hop) {
+		throw new UnsupportedOperationException("CompressedTrie is read only");
+	}
+	
+	public String lookUp(String ipAddr) {
+		return nextHops.get(lookUp(Trie.convertIPtoInt(ipAddr, 32)));
+	}
+	
+	public int lookUp(int ipv4) {
+		Node current = root;
+		int position = 0;
+		
+		while (true) {
+			if (current.skipLength > 0) {
+				if (bits(ipv4, position, current.skipLength) != current.skip) {
+					return current.skipHop;
+				}
+				position += current.skipLength;
+			}
+			
+			int index = bits(ipv4, position, current.stride);
+			position += current.stride;
+			
+			if (current.children == null || current.children[index] == null) {
+				return current.hops[index];
+			}
+			
+			current = current.children[index];
+		}
+	}
+	
+	public String getNextHop(int index) {
+		return nextHops.get(index);
+	}
+	
+	public NextHopTable getNextHops() {
+		return nextHops;
+	}
+	
+	public int getNumNodes() {
+		return numNodes;
+	}
+	
+	public int getNumPrefixes() {
+		return numPrefixes;
+	}
+	
+	/****************************************************************
+	 * Counts each node with its slot arrays under its depth, and 
+	 * the next hops.
+	 * 
+	 * @return the memory report.
+	 ***************************************************************/
+	public MemoryReport getMemoryReport() {
+		MemoryReport report = new MemoryReport("CompressedTrie", numLevels);
+		
+		countNodes(root, 0, report);
+		report.addPart("next hops", MemoryReport.nextHopBytes(nextHops));
+		
+		return report;
+	}
+	
+	private static void countNodes(Node node, int depth, MemoryReport report) {
+		long bytes = MemoryReport.objectBytes(2, 16) 
+				+ MemoryReport.arrayBytes(node.hops.length, 4);
+		int children = 0;
+		
+		if (node.children != null) {
+			bytes += MemoryReport.arrayBytes(node.children.length, 
+					MemoryReport.REFERENCE);
+			
+			for (Node child : node.children) {
+				if (child == null) continue;
+				
+				children++;
+				countNodes(child, depth + 1, report);
+			}
+		}
+		
+		report.addNode(depth, bytes, children);
+	}
+	
+	/****************************************************************
+	 * Reads bits of an address. Bits past the end of the address
+	 * read as zero.
+	 *
+	 * @param ipv4 the bits of the IPv4 address.
+	 * @param position the first bit to read, 0 being the highest.
+	 * @param length the number of bits to read, 1 to 32.
+	 * @return the bits as an unsigned number.
+	 ***************************************************************/
+	private static int bits(int ipv4, int position, int length) {
+		long aligned = (ipv4 & 0xFFFFFFFFL) << 32;
+		
+		return (int) ((aligned << position) >>> (64 - length));
+	}
+	
+	/****************************************************************
+	 * Leaf pushes and compresses the subtree under a Trie node.
+	 *
+	 * @param source the Trie node to copy.
+	 * @param strides the stride of each level of the Trie.
+	 * @param inherited the next hop of the closest ancestor prefix.
+	 * @return the copy.
+	 ***************************************************************/
+	private Node build(Trie.Node source, int[] strides, int inherited) {
+		int hop = source.prefix != null ? source.prefix.hop : inherited;
+		
+		Node node = new Node(strides[source.level]);
+		numNodes++;
+		
+		int numChildren = 0;
+		int onlyChild = -1;
+		
+		for (int i = 0; i < node.hops.length; i++) {
+			Trie.Node child = source.children != null ? source.children[i] : null;
+			node.hops[i] = hop;
+			
+			if (child == null) continue;
+			
+			if (child.children == null) {
+				if (child.prefix != null) node.hops[i] = child.prefix.hop;
+			} else {
+				if (node.children == null) {
+					node.children = new Node[node.hops.length];
+				}
+				
+				node.children[i] = build(child, strides, hop);
+				numChildren++;
+				onlyChild = i;
+			}
+		}
+		
+		if (numChildren == 1) return collapse(node, onlyChild);
+		
+		return node;
+	}
+	
+	/****************************************************************
+	 * Replaces a node by its only child if every other slot holds
+	 * the same next hop, moving the node's index into the child's
+	 * skip bits.
+	 *
+	 * @param node a node with a single child.
+	 * @param index the slot of the child.
+	 * @return the node to use in place of the given one.
+	 ***************************************************************/
+	private Node collapse(Node node, int index) {
+		Node child = node.children[index];
+		int hop = node.hops[index == 0 ? 1 : 0];
+		
+		for (int i = 0; i < node.hops.length; i++) {
+			if (i != index && node.hops[i] != hop) return node;
+		}
+		
+		if (child.skipLength > 0 && child.skipHop != hop) return node;
+		
+		int skipLength = node.stride + child.skipLength;
+		if (skipLength > 32) return node;
+		
+		child.skip = (index << child.skipLength) | child.skip;
+		child.skipLength = skipLength;
+		child.skipHop = hop;
+		
+		numNodes--;
+		
+		return child;
+	}
+	
+	private static class Node {
+		
+		/** Bits expected before this node's stride, and their number */
+		int skip;
+		int skipLength;
+		
+		/** Result when the skip bits do not match */
+		int skipHop;
+		
+		/** Number of address bits indexing the slots */
+		int stride;
+		
+		/** Child in each slot, null if none has any */
+		Node[] children;
+		
+		/** Next hop of each slot without a child */
+		int[] hops;
+		
+		public Node(int stride) {
+			this.stride = stride;
+			
+			hops = new int[1 << stride];
+		}
+	}
+}
@@ -0,0 +1,215 @@
+package main;
+
+import java.util.Arrays;
+
+/********************************************************************
+ * DIR-24-8 lookup table (Gupta, Lin and McKeown). The top 24 bits
+ * of an address index a 2^24 entry table. Entries covered only by
+ * prefixes of length 24 or less hold the next hop directly, so the
+ * lookup takes a single memory access. Entries under a longer
+ * prefix point to a 256 entry overflow block indexed by the last 8
+ * bits instead.
+ *
+ * An entry is 0 for no match, hop + 1 for a next hop, or
+ * OVERFLOW | block for an overflow block.
+ *
+ * @author agent
+ * @version Oct 17, 2026
+ *******************************************************************/
+public class Dir24Table implements RoutingTable {
+	
+	private static final int OVERFLOW = 0x80000000;
+	
+	private static final int BLOCK_SIZE = 256;
+	
+	/** First level, indexed by the top 24 bits */
+	private int[] tbl24;
+	
+	/** Overflow blocks, indexed by block * 256 + the last 8 bits */
+	private int[] tblLong;
+	
+	/* Length of the prefix each entry came from, so that a shorter
+	 * prefix added later never replaces a longer one. */
+	private byte[] len24;
+	private byte[] lenLong;
+	
+	private int numBlocks;
+	private int numPrefixes;
+	
+	private NextHopTable nextHops;
+	
+	public Dir24Table() {
+		this(new NextHopTable());
+	}
+	
+	/****************************************************************
+	 * @param nextHops the table interning the next hops, which may
+	 *        be shared with other tables.
+	 ***************************************************************/
+	public Dir24Table(NextHopTable nextHops) {
+		tbl24 = new int[1 << 24];
+		len24 = new byte[1 << 24];
+		
+		tblLong = new int[BLOCK_SIZE * 64];
+		lenLong = new byte[BLOCK_SIZE * 64];
+		
+		this.nextHops = nextHops;
+	}
+	
+	public void add(String prefix, int prefixLength, String nextHop) {
+		add(Trie.convertIPtoInt(prefix, 32), prefixLength, nextHop);
+	}
+	
+	public void add(int prefix, int prefixLength, String nextHop) {
+		add(prefix, prefixLength, nextHops.intern(nextHop));
+	}
+	
+	public void add(int prefix, int prefixLength, int hop) {
+		if (prefixLength < 0 || prefixLength > 32) {
+			throw new IllegalArgumentException("Invalid prefix length");
+		}
+		
+		if (hop < 0 || hop >= nextHops.size()) {
+			throw new IllegalArgumentException("Unknown next hop: " + hop);
+		}
+		
+		if (prefixLength < 32) prefix &= ~(-1 >>> prefixLength);
+		
+		insert(prefix, prefixLength, hop);
+	}
+	
+	public String lookUp(String ipAddr) {
+		return nextHops.get(lookUp(Trie.convertIPtoInt(ipAddr, 32)));
+	}
+	
+	public int lookUp(int ipv4) {
+		int entry = tbl24[ipv4 >>> 8];
+		
+		if (entry < 0) {
+			entry = tblLong[((entry & ~OVERFLOW) << 8) | (ipv4 & 0xFF)];
+		}
+		
+		return entry - 1;
+	}
+	
+	public String getNextHop(int index) {
+		return nextHops.get(index);
+	}
+	
+	public NextHopTable getNextHops() {
+		return nextHops;
+	}
+	
+	/****************************************************************
+	 * @return the number of tables: the first level plus one per
+	 *         overflow block.
+	 ***************************************************************/
+	public int getNumNodes() {
+		return 1 + numBlocks;
+	}
+	
+	public int getNumPrefixes() {
+		return numPrefixes;
+	}
+	
+	/****************************************************************
+	 * Counts the first level as one node with a child per overflow
+	 * block, and the blocks as the second level together with the
+	 * unused capacity kept for more.
+	 * 
+	 * @return the memory report.
+	 ***************************************************************/
+	public MemoryReport getMemoryReport() {
+		MemoryReport report = new MemoryReport("Dir24Table", 2);
+		
+		report.addNode(0, MemoryReport.arrayBytes(tbl24.length, 4)
+				+ MemoryReport.arrayBytes(len24.length, 1), numBlocks);
+		
+		long blockBytes = BLOCK_SIZE * 5L;
+		
+		for (int i = 0; i < numBlocks; i++) {
+			report.addNode(1, blockBytes, 0);
+		}
+		
+		report.addLevelBytes(1, MemoryReport.arrayBytes(tblLong.length, 4)
+				+ MemoryReport.arrayBytes(lenLong.length, 1) 
+				- numBlocks * blockBytes);
+		report.addPart("next hops", MemoryReport.nextHopBytes(nextHops));
+		
+		return report;
+	}
+	
+	/****************************************************************
+	 * Fills every entry covered by the prefix unless it already
+	 * holds a longer one.
+	 *
+	 * @param bits the prefix, left aligned.
+	 * @param length the number of bits in the prefix.
+	 * @param hop the next hop index.
+	 ***************************************************************/
+	private void insert(int bits, int length, int hop) {
+		int entry = hop + 1;
+		int index = bits >>> 8;
+		
+		numPrefixes++;
+		
+		if (length <= 24) {
+			int count = 1 << (24 - length);
+			
+			for (int i = index; i < index + count; i++) {
+				if (tbl24[i] < 0) {
+					int block = (tbl24[i] & ~OVERFLOW) * BLOCK_SIZE;
+					fill(block, BLOCK_SIZE, length, entry);
+				}
+				
+				if (len24[i] <= length) {
+					len24[i] = (byte) length;
+					
+					if (tbl24[i] >= 0) tbl24[i] = entry;
+				}
+			}
+		} else {
+			if (tbl24[index] >= 0) {
+				tbl24[index] = OVERFLOW | newBlock(tbl24[index], len24[index]);
+			}
+			
+			int block = (tbl24[index] & ~OVERFLOW) * BLOCK_SIZE;
+			int start = block + (bits & 0xFF);
+			
+			fill(start, 1 << (32 - length), length, entry);
+		}
+	}
+	
+	/****************************************************************
+	 * Sets the overflow entries in [start, start + count) that do
+	 * not already hold a longer prefix.
+	 ***************************************************************/
+	private void fill(int start, int count, int length, int entry) {
+		for (int i = start; i < start + count; i++) {
+			if (lenLong[i] <= length) {
+				lenLong[i] = (byte) length;
+				tblLong[i] = entry;
+			}
+		}
+	}
+	
+	/****************************************************************
+	 * Allocates an overflow block with every entry set to the
+	 * first level entry it replaces.
+	 *
+	 * @return the number of the new block.
+	 ***************************************************************/
+	private int newBlock(int entry, byte length) {
+		int block = numBlocks++;
+		
+		if (numBlocks * BLOCK_SIZE > tblLong.length) {
+			tblLong = Arrays.copyOf(tblLong, tblLong.length * 2);
+			lenLong = Arrays.copyOf(lenLong, lenLong.length * 2);
+		}
+		
+		Arrays.fill(tblLong, block * BLOCK_SIZE, numBlocks * BLOCK_SIZE, entry);
+		Arrays.fill(lenLong, block * BLOCK_SIZE, numBlocks * BLOCK_SIZE, length);
+		
+		return block;
+	}
+}
@@ -0,0 +1,392 @@
+package main;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+
+/********************************************************************
+ * A read only copy of a Trie packed into a single int array.
+ *
+ * Every node with children is a record of 1 + 2^stride ints, where
+ * stride is the stride of the node's level.
+ * The first holds the index of the node's own next hop (or
+ * NextHopTable.NO_MATCH), the rest are its child slots:
+ *   0         no child
+ *   positive  offset of the child's record in the table
+ *   negative  the child is a leaf, its next hop index is -slot - 1
+ * The root's record is at offset 0.
+ *
+ * The table can be saved as an image file and loaded again by
+ * memory mapping it, in which case lookups read the mapped file
+ * directly. Image layout, all little endian ints:
+ *   MAGIC, VERSION, number of levels, the stride of each level,
+ *   numNodes, number of next hops,
+ *   each next hop as its byte length then UTF-8 bytes,
+ *   padding to a multiple of 4 bytes, table length, the table.
+ *
+ * @author agent
+ * @version Oct 17, 2026
+ *******************************************************************/
+public class FrozenTrie implements RoutingTable {
+	
+	private static final int MAGIC = 0x54524945; // "TRIE"
+	private static final int VERSION = 2;
+	
+	/** The packed node records, on heap or mapped from an image */
+	private IntBuffer table;
+	
+	/** Stride of each level, from the root down */
+	private int[] strides;
+	
+	/* Shift and mask extracting each level's child index */
+	private int[] shifts;
+	private int[] masks;
+	
+	private NextHopTable nextHops;
+	
+	private int numNodes;
+	private int numPrefixes;
+	
+	/****************************************************************
+	 * Compiles the given Trie. Use Trie.freeze().
+	 *
+	 * @param trie the Trie to copy.
+	 ***************************************************************/
+	FrozenTrie(Trie trie) {
+		nextHops = trie.getNextHops();
+		numPrefixes = trie.getNumPrefixes();
+		setStrides(trie.getStrides());
+		
+		/* Gives every node with children a record, breadth first */
+		ArrayDeque<Trie.Node> queue = new ArrayDeque<Trie.Node>();
+		queue.add(trie.getRoot());
+		
+		int[] packed = new int[1024];
+		int used = 0;
+		
+		// Total size of the records of the nodes waiting in the queue
+		int queued = recordSize(0);
+		
+		while (!queue.isEmpty()) {
+			Trie.Node node = queue.poll();
+			int base = used;
+			
+			used += recordSize(node.level);
+			queued -= recordSize(node.level);
+			numNodes++;
+			
+			while (used > packed.length) {
+				packed = Arrays.copyOf(packed, packed.length * 2);
+			}
+			
+			packed[base] = hopOf(node);
+			
+			if (node.children == null) continue;
+			
+			/* Children are given records in the order they are queued */
+			for (int i = 0; i < node.children.length; i++) {
+				Trie.Node child = node.children[i];
+				
+				if (child == null) continue;
+				
+				if (child.children == null) {
+					if (child.prefix != null) {
+						packed[base + 1 + i] = -child.prefix.hop - 1;
+					}
+				} else {
+					packed[base + 1 + i] = used + queued;
+					queued += recordSize(child.level);
+					queue.add(child);
+				}
+			}
+		}
+		
+		table = IntBuffer.wrap(Arrays.copyOf(packed, used));
+	}
+	
+	private FrozenTrie(IntBuffer table, int[] strides, int numNodes,
+			NextHopTable nextHops) {
+		this.table = table;
+		this.numNodes = numNodes;
+		this.nextHops = nextHops;
+		
+		setStrides(strides);
+	}
+	
+	private void setStrides(int[] strides) {
+		this.strides = strides.clone();
+		
+		shifts = new int[strides.length];
+		masks = new int[strides.length];
+		
+		int bits = 0;
+		for (int i = 0; i < strides.length; i++) {
+			bits += strides[i];
+			shifts[i] = 32 - bits;
+			masks[i] = (1 << strides[i]) - 1;
+		}
+	}
+	
+	private int recordSize(int level) {
+		return 1 + (1 << strides[level]);
+	}
+	
+	/****************************************************************
+	 * Writes this FrozenTrie to an image file which load() can map.
+	 * 
+	 * @param path the file to write, replaced if it exists.
+	 * @throws IOException if the file cannot be written.
+	 ***************************************************************/
+	public void save(String path) throws IOException {
+		byte[][] hops = new byte[nextHops.size()][];
+		int headerLength = (5 + strides.length) * 4;
+		
+		for (int i = 0; i < hops.length; i++) {
+			hops[i] = nextHops.get(i).getBytes(StandardCharsets.UTF_8);
+			headerLength += 4 + hops[i].length;
+		}
+		
+		int padding = (4 - headerLength % 4) % 4;
+		
+		ByteBuffer header = ByteBuffer.allocate(headerLength + padding + 4);
+		header.order(ByteOrder.LITTLE_ENDIAN);
+		
+		header.putInt(MAGIC).putInt(VERSION).putInt(strides.length);
+		
+		for (int stride : strides) {
+			header.putInt(stride);
+		}
+		
+		header.putInt(numNodes).putInt(hops.length);
+		
+		for (byte[] hop : hops) {
+			header.putInt(hop.length).put(hop);
+		}
+		
+		header.position(header.position() + padding);
+		header.putInt(table.capacity());
+		header.flip();
+		
+		ByteBuffer body = ByteBuffer.allocate(table.capacity() * 4);
+		body.order(ByteOrder.LITTLE_ENDIAN);
+		
+		for (int i = 0; i < table.capacity(); i++) {
+			body.putInt(table.get(i));
+		}
+		body.flip();
+		
+		RandomAccessFile file = new RandomAccessFile(path, "rw");
+		
+		try {
+			FileChannel channel = file.getChannel();
+			channel.truncate(0);
+			
+			while (header.hasRemaining()) channel.write(header);
+			while (body.hasRemaining()) channel.write(body);
+		} finally {
+			file.close();
+		}
+	}
+	
+	/****************************************************************
+	 * Maps an image written by save(). Only the next hops are read
+	 * into the heap; lookups run against the mapped table, which is
+	 * shared through the page cache with anything else mapping it.
+	 * 
+	 * @param path the image file.
+	 * @return a FrozenTrie backed by the mapped file.
+	 * @throws IOException if the file cannot be read or is not an 
+	 *         image.
+	 ***************************************************************/
+	public static FrozenTrie load(String path) throws IOException {
+		RandomAccessFile file = new RandomAccessFile(path, "r");
+		ByteBuffer image;
+		
+		try {
+			FileChannel channel = file.getChannel();
+			image = channel.map(FileChannel.MapMode.READ_ONLY, 0, 
+					channel.size());
+		} finally {
+			file.close();
+		}
+		
+		image.order(ByteOrder.LITTLE_ENDIAN);
+		
+		try {
+			if (image.getInt() != MAGIC || image.getInt() != VERSION) {
+				throw new IOException("Invalid Trie Image");
+			}
+			
+			int[] strides = new int[image.getInt()];
+			
+			for (int i = 0; i < strides.length; i++) {
+				strides[i] = image.getInt();
+			}
+			
+			int numNodes = image.getInt();
+			int numHops = image.getInt();
+			
+			NextHopTable nextHops = new NextHopTable();
+			
+			for (int i = 0; i < numHops; i++) {
+				byte[] hop = new byte[image.getInt()];
+				image.get(hop);
+				nextHops.intern(new String(hop, StandardCharsets.UTF_8));
+			}
+			
+			image.position((image.position() + 3) & ~3);
+			int tableLength = image.getInt();
+			
+			image.limit(image.position() + tableLength * 4);
+			IntBuffer table = image.slice().order(ByteOrder.LITTLE_ENDIAN)
+					.asIntBuffer();
+			
+			return new FrozenTrie(table, strides, numNodes, nextHops);
+			
+		} catch (RuntimeException e) {
+			throw new IOException("Invalid Trie Image", e);
+		}
+	}
+	
+	/****************************************************************
+	 * Not supported, a FrozenTrie is read only.
+	 ***************************************************************/
+	public void add(String prefix, int prefixLength, String nextHop) {
+		throw new UnsupportedOperationException("FrozenTrie is read only");
+	}
+	
+	public void add(int prefix, int prefixLength, String nextHop) {
+		throw new UnsupportedOperationException("FrozenTrie is read only");
+	}
+	
+	public void add(int prefix, int prefixLength, int hop) {
+		throw new UnsupportedOperationException("FrozenTrie is read only");
+	}
+	
+	/****************************************************************
+	 * Looks up the given IP address and returns the next hop
+	 * associated with it. Returns "NoMatch" if there is no
+	 * matching prefix.
+	 *
+	 * @param ipAddr the IPv4 address to lookup
+	 * @return the next hop associated with the given IP if any.
+	 ***************************************************************/
+	public String lookUp(String ipAddr) {
+		return nextHops.get(lookUp(Trie.convertIPtoInt(ipAddr, 32)));
+	}
+	
+	/****************************************************************
+	 * Looks up the given IP address and returns the index of the
+	 * next hop associated with it, or NextHopTable.NO_MATCH.
+	 *
+	 * @param ipv4 the bits of the IPv4 address to lookup
+	 * @return the index of the next hop, see getNextHop(int).
+	 ***************************************************************/
+	public int lookUp(int ipv4) {
+		IntBuffer table = this.table;
+		
+		int base = 0;
+		int level = 0;
+		int best = NextHopTable.NO_MATCH;
+		
+		while (true) {
+			int hop = table.get(base);
+			if (hop != NextHopTable.NO_MATCH) best = hop;
+			
+			int shift = shifts[level];
+			int index = shift < 0 ? ipv4 << -shift : ipv4 >>> shift;
+			index &= masks[level];
+			
+			int next = table.get(base + 1 + index);
+			
+			if (next > 0) {
+				base = next;
+				level++;
+			} else if (next < 0) {
+				return -next - 1;
+			} else {
+				return best;
+			}
+		}
+	}
+	
+	/****************************************************************
+	 * @param index a next hop index returned by lookUp(int).
+	 * @return the next hop IP address, or "NoMatch".
+	 ***************************************************************/
+	public String getNextHop(int index) {
+		return nextHops.get(index);
+	}
+	
+	public NextHopTable getNextHops() {
+		return nextHops;
+	}
+	
+	/****************************************************************
+	 * @return the number of node records in the table.
+	 ***************************************************************/
+	public int getNumNodes() {
+		return numNodes;
+	}
+	
+	/****************************************************************
+	 * @return the number of nodes of the Trie holding a prefix, or 
+	 *         0 when loaded from an image.
+	 ***************************************************************/
+	public int getNumPrefixes() {
+		return numPrefixes;
+	}
+	
+	/****************************************************************
+	 * @return the size of the packed table in bytes.
+	 ***************************************************************/
+	public long getTableBytes() {
+		return table.capacity() * 4L;
+	}
+	
+	/****************************************************************
+	 * Counts the memory of the packed table, each record under its
+	 * level, and the next hops. A mapped table is counted although 
+	 * it is not on the heap.
+	 * 
+	 * @return the memory report.
+	 ***************************************************************/
+	public MemoryReport getMemoryReport() {
+		MemoryReport report = new MemoryReport("FrozenTrie", strides.length);
+		
+		countRecords(0, 0, report);
+		
+		if (table.hasArray()) {
+			report.addLevelBytes(0, MemoryReport.arrayBytes(0, 4));
+		}
+		report.addPart("next hops", MemoryReport.nextHopBytes(nextHops));
+		
+		return report;
+	}
+	
+	private void countRecords(int base, int level, MemoryReport report) {
+		int size = recordSize(level);
+		int children = 0;
+		
+		for (int i = base + 1; i < base + size; i++) {
+			int slot = table.get(i);
+			
+			if (slot != 0) children++;
+			if (slot > 0) countRecords(slot, level + 1, report);
+		}
+		
+		report.addNode(level, size * 4L, children);
+	}
+	
+	private static int hopOf(Trie.Node node) {
+		if (node.prefix == null) return NextHopTable.NO_MATCH;
+		
+		return node.prefix.hop;
+	}
+}
@@ -0,0 +1,287 @@
+package main;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/********************************************************************
+ * Binary search on prefix lengths (Waldvogel, Varghese, Turner and
+ * Plattner). Every prefix length in use has a PrefixHashTable from
+ * the prefix bits, and a lookup binary searches the lengths: a hit
+ * at a length means a longer prefix may match, a miss that none
+ * can. A lookup thus takes about log2 of the number of lengths
+ * probes, five for a full table, however long the match.
+ *
+ * For a miss to be trusted, each prefix leaves a marker at every
+ * shorter length the search passes on its way to the prefix's own
+ * length. Every entry, prefix or marker, holds its best matching
+ * prefix: the next hop of the longest prefix no longer than the
+ * entry that matches it. A lookup returns that of the last hit. The
+ * default route has no table and is the result when nothing hits.
+ *
+ * Routes are kept in a PrefixRoutes and the tables are built on the
+ * first lookup after a change. With -Dmain.lookupStats=true the probes of
+ * every lookup are counted, see getProbesPerLookup().
+ *
+ * @author agent
+ * @version Oct 17, 2026
+ *******************************************************************/
+public class LengthSearchTable implements RoutingTable {
+	
+	/** Every route added and the tables compiled from them */
+	private PrefixRoutes<Tables> routes;
+	
+	private NextHopTable nextHops;
+	
+	private final LongAdder lookups = new LongAdder();
+	private final LongAdder probes = new LongAdder();
+	
+	public LengthSearchTable() {
+		this(new NextHopTable());
+	}
+	
+	/****************************************************************
+	 * @param nextHops the table interning the next hops, which may
+	 *        be shared with other tables.
+	 ***************************************************************/
+	public LengthSearchTable(NextHopTable nextHops) {
+		this.nextHops = nextHops;
+		
+		routes = new PrefixRoutes<Tables>(nextHops) {
+			protected Tables compile() {
+				return build();
+			}
+		};
+	}
+	
+	public void add(String prefix, int prefixLength, String nextHop) {
+		routes.add(prefix, prefixLength, nextHop);
+	}
+	
+	public void add(int prefix, int prefixLength, String nextHop) {
+		routes.add(prefix, prefixLength, nextHop);
+	}
+	
+	public void add(int prefix, int prefixLength, int hop) {
+		routes.add(prefix, prefixLength, hop);
+	}
+	
+	public String lookUp(String ipAddr) {
+		return nextHops.get(lookUp(Trie.convertIPtoInt(ipAddr, 32)));
+	}
+	
+	public int lookUp(int ipv4) {
+		Tables t = routes.get();
+		
+		int[] lengths = t.lengths;
+		PrefixHashTable[] byLength = t.byLength;
+		
+		int best = t.defaultHop;
+		int low = 0;
+		int high = lengths.length - 1;
+		int probed = 0;
+		
+		while (low <= high) {
+			int middle = (low + high) >>> 1;
+			int bmp = byLength[middle].get(ipv4 >>> (32 - lengths[middle]));
+			
+			probed++;
+			
+			if (bmp == PrefixHashTable.MISSING) {
+				high = middle - 1;
+			} else {
+				if (bmp != NextHopTable.NO_MATCH) best = bmp;
+				low = middle + 1;
+			}
+		}
+		
+		if (LookupStats.ENABLED) {
+			lookups.increment();
+			probes.add(probed);
+		}
+		
+		return best;
+	}
+	
+	public String getNextHop(int index) {
+		return nextHops.get(index);
+	}
+	
+	public NextHopTable getNextHops() {
+		return nextHops;
+	}
+	
+	/****************************************************************
+	 * @return the number of entries in the tables, prefixes and
+	 *         markers.
+	 ***************************************************************/
+	public int getNumNodes() {
+		Tables t = routes.get();
+		
+		return t.numEntries;
+	}
+	
+	public int getNumPrefixes() {
+		return routes.size();
+	}
+	
+	/****************************************************************
+	 * @return the average number of hash table probes per lookup,
+	 *         counted only with -Dmain.lookupStats=true.
+	 ***************************************************************/
+	public double getProbesPerLookup() {
+		long count = lookups.sum();
+		
+		return count == 0 ? 0 : probes.sum() / (double) count;
+	}
+	
+	/****************************************************************
+	 * Counts each table as a node of the level of its prefix length
+	 * with a child per entry, then the routes and the next hops.
+	 *
+	 * @return the memory report.
+	 ***************************************************************/
+	public MemoryReport getMemoryReport() {
+		Tables t = routes.get();
+		
+		MemoryReport report = new MemoryReport("LengthSearchTable", 33);
+		
+		for (int i = 0; i < t.lengths.length; i++) {
+			report.addNode(t.lengths[i], t.byLength[i].getBytes(),
+					t.byLength[i].size());
+		}
+		
+		report.addPart("routes", routes.getBytes());
+		report.addPart("next hops", MemoryReport.nextHopBytes(nextHops));
+		
+		return report;
+	}
+	
+	/****************************************************************
+	 * Builds the tables from the routes, called by routes holding its
+	 * lock.
+	 ***************************************************************/
+	private Tables build() {
+		Tables t = new Tables();
+		int count = routes.size();
+		
+		/* Finds the lengths in use and how many prefixes each has */
+		int[] counts = new int[33];
+		
+		for (int i = 0; i < count; i++) counts[routes.getLength(i)]++;
+		
+		int numLengths = 0;
+		for (int length = 1; length <= 32; length++) {
+			if (counts[length] > 0) numLengths++;
+		}
+		
+		t.lengths = new int[numLengths];
+		t.byLength = new PrefixHashTable[numLengths];
+		
+		/* Index of each length in lengths, -1 if not in use */
+		int[] index = new int[33];
+		index[0] = -1;
+		
+		for (int length = 1, i = 0; length <= 32; length++) {
+			index[length] = -1;
+			
+			if (counts[length] == 0) continue;
+			
+			index[length] = i;
+			t.lengths[i] = length;
+			t.byLength[i] = new PrefixHashTable(2 * counts[length]);
+			i++;
+		}
+		
+		/* The prefixes first, so markers can find their matches */
+		for (int i = 0; i < count; i++) {
+			int length = routes.getLength(i);
+			
+			if (length == 0) t.defaultHop = routes.getHop(i);
+			else t.byLength[index[length]].put(bitsOf(i), routes.getHop(i));
+		}
+		
+		for (int i = 0; i < count; i++) {
+			int length = routes.getLength(i);
+			
+			if (length > 0) t.addMarkers(bitsOf(i), length, index[length]);
+		}
+		
+		for (PrefixHashTable table : t.byLength) t.numEntries += table.size();
+		
+		return t;
+	}
+	
+	/****************************************************************
+	 * @return the bits of the route at an index of routes, right
+	 *         aligned.
+	 ***************************************************************/
+	private int bitsOf(int index) {
+		return routes.getPrefix(index) >>> (32 - routes.getLength(index));
+	}
+	
+	/****************************************************************
+	 * The tables of one compiled version, never changed once built.
+	 ***************************************************************/
+	private static class Tables {
+		
+		/** The prefix lengths in use, shortest first */
+		int[] lengths;
+		
+		/** The table of each length in lengths */
+		PrefixHashTable[] byLength;
+		
+		int defaultHop = NextHopTable.NO_MATCH;
+		
+		int numEntries;
+		
+		/****************************************************************
+		 * Adds a marker for a prefix at each shorter length the binary
+		 * search passes before reaching the prefix's length.
+		 *
+		 * @param bits the prefix bits, right aligned.
+		 * @param length the number of bits in the prefix.
+		 * @param target the index of the length in lengths.
+		 ***************************************************************/
+		void addMarkers(int bits, int length, int target) {
+			int low = 0;
+			int high = lengths.length - 1;
+			
+			while (low <= high) {
+				int middle = (low + high) >>> 1;
+				
+				if (middle == target) return;
+				
+				if (middle > target) {
+					high = middle - 1;
+					continue;
+				}
+				
+				int marker = bits >>> (length - lengths[middle]);
+				
+				if (byLength[middle].get(marker) == PrefixHashTable.MISSING) {
+					byLength[middle].put(marker, bestMatch(marker, middle));
+				}
+				
+				low = middle + 1;
+			}
+		}
+		
+		/****************************************************************
+		 * Finds the next hop of the longest prefix matching a marker
+		 * whose length is at most the marker's. The first entry found
+		 * going down from the marker's length already holds it.
+		 *
+		 * @param bits the marker bits, right aligned.
+		 * @param at the index of the marker's length in lengths.
+		 * @return the next hop, or NO_MATCH.
+		 ***************************************************************/
+		private int bestMatch(int bits, int at) {
+			for (int i = at; i >= 0; i--) {
+				int hop = byLength[i].get(bits >>> (lengths[at] - lengths[i]));
+				
+				if (hop != PrefixHashTable.MISSING) return hop;
+			}
+			
+			return NextHopTable.NO_MATCH;
+		}
+	}
+}
@@ -0,0 +1,325 @@
+package main;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Random;
+
+/********************************************************************
+ * Benchmarks the engines in the manner of JMH: every benchmark is
+ * run for warmup iterations first, then timed with System.nanoTime
+ * over measured iterations of a fixed length, and the bytes the
+ * thread allocated are read from the ThreadMXBean. Reports
+ * operations per second, nanoseconds per operation and bytes
+ * allocated per operation for
+ *   build    building the table from a prefix set
+ *   lookup   looking up one address at a time
+ *   batch    Trie.lookUp(int[], int[], int) on blocks of addresses
+ *   update   withdrawing a prefix and adding it back
+ * Batch and update are only run on engines that are a Trie.
+ *
+ * Each engine is run on a synthetic prefix set with uniform
+ * lengths, a prefix set shaped like a real BGP table and, when
+ * given, the routes of a routes file.
+ *
+ * Usage: LookupBenchmark [routes file] [engine ...]
+ *
+ * @author agent
+ * @version Oct 17, 2026
+ *******************************************************************/
+public class LookupBenchmark {
+	
+	/** Engines benchmarked if none are given, see Router(String) */
+	private static final String[] ENGINES = {"1", "2", "3", "3:compressed",
+			"16-8-8", "16-8-8:frozen", "16-8-8:parallel", "auto", "dir24-8",
+			"poptrie", "range", "lengths", "bloom"};
+	
+	private static final int WARMUP_ITERATIONS = 3;
+	private static final int MEASURED_ITERATIONS = 5;
+	
+	/** Length of each iteration */
+	private static final long ITERATION_NANOS = 500000000L;
+	
+	/** Number of prefixes in the generated sets */
+	private static final int NUM_PREFIXES = 500000;
+	
+	/** Number of addresses looked up, a power of two */
+	private static final int NUM_ADDRESSES = 1 << 20;
+	
+	/** Addresses looked up together by the batch benchmark */
+	private static final int BATCH_SIZE = 1024;
+	
+	/** Share of each prefix length in a real BGP table, by length */
+	private static final double[] BGP_LENGTHS = new double[33];
+	
+	static {
+		BGP_LENGTHS[8] = 0.0003;
+		BGP_LENGTHS[11] = 0.0002;
+		BGP_LENGTHS[12] = 0.0006;
+		BGP_LENGTHS[13] = 0.0012;
+		BGP_LENGTHS[14] = 0.0025;
+		BGP_LENGTHS[15] = 0.0045;
+		BGP_LENGTHS[16] = 0.0250;
+		BGP_LENGTHS[17] = 0.0120;
+		BGP_LENGTHS[18] = 0.0200;
+		BGP_LENGTHS[19] = 0.0390;
+		BGP_LENGTHS[20] = 0.0440;
+		BGP_LENGTHS[21] = 0.0500;
+		BGP_LENGTHS[22] = 0.1050;
+		BGP_LENGTHS[23] = 0.0900;
+		BGP_LENGTHS[24] = 0.6057;
+	}
+	
+	/** Receives results so the JIT cannot drop the work */
+	static volatile int sink;
+	
+	/****************************************************************
+	 * One benchmark operation.
+	 ***************************************************************/
+	private interface Operation {
+		
+		/** @return the number of operations done. */
+		int run();
+	}
+	
+	private String engine;
+	private RouteList routes;
+	private int[] addresses;
+	
+	private Router router;
+	
+	public LookupBenchmark(String engine, RouteList routes, int[] addresses) {
+		this.engine = engine;
+		this.routes = routes;
+		this.addresses = addresses;
+	}
+	
+	/****************************************************************
+	 * Runs the benchmarks of the engine, printing a row for each.
+	 ***************************************************************/
+	public void run(String set) {
+		print(set, "build", measure(new Operation() {
+			public int run() {
+				router = new Router(engine);
+				router.populateTrie(routes);
+				
+				return 1;
+			}
+		}));
+		
+		final RoutingTable table = router.getTable();
+		
+		print(set, "lookup", measure(new Operation() {
+			private int next;
+			
+			public int run() {
+				int result = 0;
+				
+				for (int i = 0; i < BATCH_SIZE; i++) {
+					result += table.lookUp(addresses[next++ & (NUM_ADDRESSES - 1)]);
+				}
+				sink = result;
+				
+				return BATCH_SIZE;
+			}
+		}));
+		
+		if (!(table instanceof Trie)) return;
+		
+		final Trie trie = (Trie) table;
+		
+		print(set, "batch", measure(new Operation() {
+			private int[] block = new int[BATCH_SIZE];
+			private int[] hops = new int[BATCH_SIZE];
+			private int next;
+			
+			public int run() {
+				System.arraycopy(addresses, next, block, 0, BATCH_SIZE);
+				next = (next + BATCH_SIZE) & (NUM_ADDRESSES - 1);
+				
+				trie.lookUp(block, hops, BATCH_SIZE);
+				sink = hops[0];
+				
+				return BATCH_SIZE;
+			}
+		}));
+		
+		print(set, "update", measure(new Operation() {
+			private int next;
+			
+			public int run() {
+				int i = next++ % routes.size();
+				int prefix = routes.getPrefix(i);
+				int length = routes.getLength(i);
+				
+				trie.withdraw(prefix, length);
+				trie.add(prefix, length, routes.getNextHops().get(routes.getHop(i)));
+				
+				return 1;
+			}
+		}));
+	}
+	
+	/****************************************************************
+	 * Runs the warmup iterations, then the measured ones.
+	 *
+	 * @return operations per second, nanoseconds per operation and
+	 *         bytes allocated per operation, -1 if unknown.
+	 ***************************************************************/
+	private static double[] measure(Operation operation) {
+		for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+			long start = System.nanoTime();
+			
+			while (System.nanoTime() - start < ITERATION_NANOS) operation.run();
+		}
+		
+		long ops = 0;
+		long nanos = 0;
+		long bytes = 0;
+		
+		for (int i = 0; i < MEASURED_ITERATIONS; i++) {
+			long allocated = allocatedBytes();
+			long start = System.nanoTime();
+			long elapsed;
+			
+			do {
+				ops += operation.run();
+				elapsed = System.nanoTime() - start;
+			} while (elapsed < ITERATION_NANOS);
+			
+			nanos += elapsed;
+			bytes += allocatedBytes() - allocated;
+		}
+		
+		double perOp = allocatedBytes() < 0 ? -1 : bytes / (double) ops;
+		
+		return new double[] {ops * 1e9 / nanos, nanos / (double) ops, perOp};
+	}
+	
+	/****************************************************************
+	 * @return the bytes the current thread has allocated, or -1 if
+	 *         the JVM cannot tell.
+	 ***************************************************************/
+	private static long allocatedBytes() {
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		
+		if (!(threads instanceof com.sun.management.ThreadMXBean)) return -1;
+		
+		return ((com.sun.management.ThreadMXBean) threads)
+				.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+	
+	private void print(String set, String benchmark, double[] result) {
+		String bytes = result[2] < 0 ? "n/a" : String.format("%.1f", result[2]);
+		
+		System.out.println(String.format("%-10s %-16s %-8s %14.2f %12.2f %10s",
+				set, engine, benchmark, result[0], result[1], bytes));
+	}
+	
+	/****************************************************************
+	 * Generates prefixes with lengths drawn from the given shares,
+	 * clustered in a few hundred /8 blocks like allocated space.
+	 ***************************************************************/
+	private static RouteList generate(double[] lengths, Random random) {
+		RouteList routes = new RouteList();
+		
+		for (int i = 0; i < NUM_PREFIXES; i++) {
+			double pick = random.nextDouble();
+			int length = 32;
+			
+			for (int l = 0; l <= 32; l++) {
+				pick -= lengths[l];
+				if (pick < 0) {
+					length = l;
+					break;
+				}
+			}
+			
+			int prefix = (1 + random.nextInt(223)) << 24 | random.nextInt(1 << 24);
+			
+			routes.add(prefix, length, "10.0." + random.nextInt(4) + "."
+					+ random.nextInt(16));
+		}
+		
+		return routes;
+	}
+	
+	/****************************************************************
+	 * Picks addresses to look up: nine in ten under a prefix of the
+	 * set, the rest anywhere.
+	 ***************************************************************/
+	private static int[] addresses(RouteList routes, Random random) {
+		int[] addresses = new int[NUM_ADDRESSES];
+		
+		for (int i = 0; i < NUM_ADDRESSES; i++) {
+			addresses[i] = random.nextInt();
+			
+			if (random.nextInt(10) == 0) continue;
+			
+			int route = random.nextInt(routes.size());
+			int length = routes.getLength(route);
+			int mask = length == 0 ? 0 : -1 << (32 - length);
+			
+			addresses[i] = (routes.getPrefix(route) & mask) | (addresses[i] & ~mask);
+		}
+		
+		return addresses;
+	}
+	
+	public static void main(String[] args) throws IOException {
+		Random random = new Random(1);
+		
+		ArrayList<String> engines = new ArrayList<String>();
+		ArrayList<String> sets = new ArrayList<String>();
+		ArrayList<RouteList> prefixSets = new ArrayList<RouteList>();
+		
+		double[] uniform = new double[33];
+		for (int l = 8; l <= 32; l++) uniform[l] = 1.0 / 25;
+		
+		sets.add("synthetic");
+		prefixSets.add(generate(uniform, random));
+		
+		sets.add("bgp");
+		prefixSets.add(generate(BGP_LENGTHS, random));
+		
+		for (int i = 0; i < args.length; i++) {
+			if (i == 0 && new File(args[0]).isFile()) {
+				final RouteList routes = new RouteList();
+				
+				new RoutesParser(routes.getNextHops()).parse(args[0],
+						new RouteSink() {
+					public void addRoute(int prefix, int prefixLength, int hop) {
+						routes.add(prefix, prefixLength, hop);
+					}
+					
+					public void addRoute6(long hi, long lo, int prefixLength,
+							int hop) {
+					}
+				});
+				
+				sets.add("file");
+				prefixSets.add(routes);
+			} else {
+				engines.add(args[i]);
+			}
+		}
+		
+		if (engines.isEmpty()) {
+			for (String engine : ENGINES) engines.add(engine);
+		}
+		
+		System.out.println(String.format("%-10s %-16s %-8s %14s %12s %10s",
+				"Set", "Engine", "Bench", "ops/s", "ns/op", "B/op"));
+		
+		for (int s = 0; s < sets.size(); s++) {
+			RouteList routes = prefixSets.get(s);
+			int[] addresses = addresses(routes, random);
+			
+			for (String engine : engines) {
+				new LookupBenchmark(engine, routes, addresses).run(sets.get(s));
+			}
+		}
+	}
+}
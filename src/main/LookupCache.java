@@ -0,0 +1,269 @@
+package main;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/********************************************************************
+ * A cache of lookup results in front of a Trie, for traffic where a
+ * few destinations make up most lookups.
+ *
+ * The cache is set associative: an address hashes to a set of WAYS
+ * slots, and a miss replaces a slot of that set chosen by CLOCK.
+ * Each slot is one long of an AtomicLongArray, the address in the
+ * high half and the next hop index + 1 in the low half, so the cache
+ * boxes nothing and readers take no locks.
+ *
+ * The cache listens to the Trie, and a published change empties only
+ * the slots of addresses under the changed prefix, so route churn
+ * leaves the rest of the cache warm. Up to 2^(32 - length) addresses
+ * of a long prefix are looked for in their own sets; a prefix
+ * covering more addresses than the cache has slots has every slot
+ * checked instead. That work is done by the thread changing the
+ * Trie, never by a lookup. A batch of changes, see 
+ * Trie.beginUpdate(), empties the whole cache when committed.
+ *
+ * @author agent
+ * @version Oct 17, 2026
+ *******************************************************************/
+public class LookupCache implements RoutingTable {
+	
+	/** Number of slots in a set */
+	private static final int WAYS = 4;
+	
+	/** A slot holding nothing, as no next hop + 1 is 0xFFFFFFFF */
+	private static final long EMPTY = -1L;
+	
+	private Trie trie;
+	
+	private AtomicLongArray slots;
+	
+	/** Number of bits indexing the sets */
+	private int setBits;
+	
+	/* The CLOCK state of each slot and set. Written without
+	 * synchronization; a lost update only makes a worse choice of
+	 * slot to replace. */
+	private byte[] referenced;
+	private int[] hands;
+	
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	
+	/****************************************************************
+	 * @param trie the Trie the results come from.
+	 * @param capacity the number of results kept, rounded up to a
+	 *        power of two of at least WAYS.
+	 ***************************************************************/
+	public LookupCache(Trie trie, int capacity) {
+		if (capacity < 1 || capacity > 1 << 30) {
+			throw new IllegalArgumentException("Invalid cache capacity");
+		}
+		
+		this.trie = trie;
+		
+		int size = Math.max(WAYS, Integer.highestOneBit(capacity - 1) << 1);
+		setBits = Integer.numberOfTrailingZeros(size / WAYS);
+		
+		slots = new AtomicLongArray(size);
+		referenced = new byte[size];
+		hands = new int[size / WAYS];
+		
+		clear();
+		
+		trie.addChangeListener(new PrefixChangeListener() {
+			
+			public void prefixChanged(int prefix, int prefixLength) {
+				invalidate(prefix, prefixLength);
+			}
+		});
+	}
+	
+	public void add(String prefix, int prefixLength, String nextHop) {
+		trie.add(prefix, prefixLength, nextHop);
+	}
+	
+	public void add(int prefix, int prefixLength, String nextHop) {
+		trie.add(prefix, prefixLength, nextHop);
+	}
+	
+	public void add(int prefix, int prefixLength, int hop) {
+		trie.add(prefix, prefixLength, hop);
+	}
+	
+	public String lookUp(String ipAddr) {
+		return trie.getNextHop(lookUp(Trie.convertIPtoInt(ipAddr, 32)));
+	}
+	
+	/****************************************************************
+	 * Looks up the given IP address in the cache, and in the Trie
+	 * if it is not there.
+	 *
+	 * @param ipv4 the bits of the IPv4 address to lookup
+	 * @return the index of the next hop, see getNextHop(int).
+	 ***************************************************************/
+	public int lookUp(int ipv4) {
+		int set = setOf(ipv4);
+		int first = set * WAYS;
+		
+		for (int i = first; i < first + WAYS; i++) {
+			long slot = slots.get(i);
+			
+			if ((int) (slot >>> 32) == ipv4 && slot != EMPTY) {
+				referenced[i] = 1;
+				hits.increment();
+				
+				return (int) slot - 1;
+			}
+		}
+		
+		misses.increment();
+		
+		/* Read before the Trie, see below */
+		int version = trie.getVersion();
+		int hop = trie.lookUp(ipv4);
+		
+		int victim = victim(set, first);
+		long slot = (long) ipv4 << 32 | ((hop + 1) & 0xFFFFFFFFL);
+		
+		slots.set(victim, slot);
+		referenced[victim] = 0;
+		
+		/* A change published since the Trie was read may have emptied
+		 * the slot before it was filled, so the result may be stale */
+		if (trie.getVersion() != version) {
+			slots.compareAndSet(victim, slot, EMPTY);
+		}
+		
+		return hop;
+	}
+	
+	private int setOf(int ipv4) {
+		return setBits == 0 ? 0 : (ipv4 * 0x9E3779B9) >>> (32 - setBits);
+	}
+	
+	/****************************************************************
+	 * Empties the slots of every address under a prefix, searching
+	 * the sets of the addresses when there are fewer of them than 
+	 * slots and every slot otherwise.
+	 * 
+	 * @param prefix the bits of the prefix, left aligned.
+	 * @param prefixLength the number of bits in the prefix.
+	 ***************************************************************/
+	private void invalidate(int prefix, int prefixLength) {
+		int span = 32 - prefixLength;
+		
+		/* A lookup filling a slot meanwhile is kept if it is not for
+		 * an address under the prefix */
+		if (((long) WAYS << span) < slots.length()) {
+			for (int i = 0; i < 1 << span; i++) {
+				int ipv4 = prefix | i;
+				int first = setOf(ipv4) * WAYS;
+				
+				for (int j = first; j < first + WAYS; j++) {
+					long slot = slots.get(j);
+					
+					if ((int) (slot >>> 32) == ipv4) {
+						slots.compareAndSet(j, slot, EMPTY);
+					}
+				}
+			}
+			
+			return;
+		}
+		
+		int mask = prefixLength == 0 ? 0 : -1 << span;
+		
+		for (int i = 0; i < slots.length(); i++) {
+			long slot = slots.get(i);
+			
+			if (((int) (slot >>> 32) & mask) == prefix) {
+				slots.compareAndSet(i, slot, EMPTY);
+			}
+		}
+	}
+	
+	/****************************************************************
+	 * Picks the slot of a set to replace: the first from the set's
+	 * hand that was not used since the hand last passed it.
+	 ***************************************************************/
+	private int victim(int set, int first) {
+		int hand = hands[set];
+		
+		/* Two passes, as the first may only clear referenced slots */
+		for (int step = 0; step < 2 * WAYS; step++) {
+			int slot = first + (hand + step) % WAYS;
+			
+			if (referenced[slot] == 0) {
+				hands[set] = (hand + step + 1) % WAYS;
+				return slot;
+			}
+			
+			referenced[slot] = 0;
+		}
+		
+		return first + hand % WAYS;
+	}
+	
+	/****************************************************************
+	 * Empties every slot. Lookups running meanwhile may refill some.
+	 ***************************************************************/
+	public void clear() {
+		for (int i = 0; i < slots.length(); i++) slots.set(i, EMPTY);
+	}
+	
+	public String getNextHop(int index) {
+		return trie.getNextHop(index);
+	}
+	
+	public NextHopTable getNextHops() {
+		return trie.getNextHops();
+	}
+	
+	public int getNumNodes() {
+		return trie.getNumNodes();
+	}
+	
+	public int getNumPrefixes() {
+		return trie.getNumPrefixes();
+	}
+	
+	public long getHits() {
+		return hits.sum();
+	}
+	
+	public long getMisses() {
+		return misses.sum();
+	}
+	
+	/****************************************************************
+	 * @return the share of lookups answered by the cache, 0 to 1.
+	 ***************************************************************/
+	public double getHitRatio() {
+		long hit = hits.sum();
+		long total = hit + misses.sum();
+		
+		return total == 0 ? 0 : hit / (double) total;
+	}
+	
+	public void resetStats() {
+		hits.reset();
+		misses.reset();
+	}
+	
+	/****************************************************************
+	 * @return the Trie's report with the cache as a part.
+	 ***************************************************************/
+	public MemoryReport getMemoryReport() {
+		MemoryReport report = trie.getMemoryReport();
+		
+		report.addPart("cache", MemoryReport.arrayBytes(slots.length(), 8)
+				+ MemoryReport.arrayBytes(referenced.length, 1)
+				+ MemoryReport.arrayBytes(hands.length, 4));
+		
+		return report;
+	}
+	
+	Trie getTrie() {
+		return trie;
+	}
+}
@@ -0,0 +1,168 @@
+package main;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/********************************************************************
+ * Counts the lookups of a Trie: how many there were, how many found
+ * no match, the level each one stopped at, and the latency of a
+ * sample of them in power of two buckets. Counters are LongAdders so
+ * that lookups on many threads do not contend.
+ *
+ * Only kept when the JVM is started with -Dmain.lookupStats=true.
+ * ENABLED is a constant, so otherwise the JIT drops the checks on
+ * the lookup path entirely.
+ *
+ * @author agent
+ * @version Oct 17, 2026
+ *******************************************************************/
+public class LookupStats {
+	
+	/** Whether lookups are counted at all */
+	public static final boolean ENABLED = Boolean.getBoolean("main.lookupStats");
+	
+	/** One lookup in SAMPLE_MASK + 1 is timed */
+	private static final int SAMPLE_MASK = 1023;
+	
+	/** Latency buckets, bucket i holding 2^i to 2^(i+1) - 1 ns */
+	private static final int BUCKETS = 40;
+	
+	private final LongAdder lookups = new LongAdder();
+	private final LongAdder noMatches = new LongAdder();
+	
+	/** Number of lookups that stopped at each level */
+	private final LongAdder[] depths;
+	
+	private final LongAdder[] latencies;
+	
+	/****************************************************************
+	 * @param levels the number of levels a lookup can stop at.
+	 ***************************************************************/
+	public LookupStats(int levels) {
+		depths = new LongAdder[levels];
+		for (int i = 0; i < levels; i++) depths[i] = new LongAdder();
+		
+		latencies = new LongAdder[BUCKETS];
+		for (int i = 0; i < BUCKETS; i++) latencies[i] = new LongAdder();
+	}
+	
+	/****************************************************************
+	 * @return whether the lookup about to start should be timed.
+	 ***************************************************************/
+	static boolean sample() {
+		return (ThreadLocalRandom.current().nextInt() & SAMPLE_MASK) == 0;
+	}
+	
+	/****************************************************************
+	 * Counts a lookup.
+	 *
+	 * @param level the level of the last node the lookup reached.
+	 * @param hop the result of the lookup.
+	 ***************************************************************/
+	void record(int level, int hop) {
+		lookups.increment();
+		depths[level].increment();
+		
+		if (hop == NextHopTable.NO_MATCH) noMatches.increment();
+	}
+	
+	/****************************************************************
+	 * Counts the latency of a sampled lookup.
+	 ***************************************************************/
+	void recordLatency(long nanos) {
+		int bucket = 63 - Long.numberOfLeadingZeros(Math.max(nanos, 1));
+		
+		latencies[Math.min(bucket, BUCKETS - 1)].increment();
+	}
+	
+	public long getLookups() {
+		return lookups.sum();
+	}
+	
+	public long getNoMatches() {
+		return noMatches.sum();
+	}
+	
+	/****************************************************************
+	 * @return the share of lookups that found no match, 0 to 1.
+	 ***************************************************************/
+	public double getNoMatchRate() {
+		long total = lookups.sum();
+		
+		return total == 0 ? 0 : noMatches.sum() / (double) total;
+	}
+	
+	/****************************************************************
+	 * @param level a level of the Trie.
+	 * @return the number of lookups that stopped at the level.
+	 ***************************************************************/
+	public long getDepthCount(int level) {
+		return depths[level].sum();
+	}
+	
+	public int getNumLevels() {
+		return depths.length;
+	}
+	
+	/****************************************************************
+	 * @param percentile the percentile wanted, such as 99.9.
+	 * @return the latency in nanoseconds that the given share of the
+	 *         sampled lookups stayed under, rounded up to a power of
+	 *         two, or 0 if none were sampled.
+	 ***************************************************************/
+	public long getLatencyPercentile(double percentile) {
+		long[] counts = new long[BUCKETS];
+		long total = 0;
+		
+		for (int i = 0; i < BUCKETS; i++) {
+			counts[i] = latencies[i].sum();
+			total += counts[i];
+		}
+		
+		if (total == 0) return 0;
+		
+		long rank = (long) Math.ceil(total * percentile / 100);
+		long seen = 0;
+		
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += counts[i];
+			
+			if (seen >= rank) return 1L << (i + 1);
+		}
+		
+		return 1L << BUCKETS;
+	}
+	
+	/****************************************************************
+	 * Clears every counter. Lookups running meanwhile may be counted
+	 * in part.
+	 ***************************************************************/
+	public void reset() {
+		lookups.reset();
+		noMatches.reset();
+		
+		for (LongAdder depth : depths) depth.reset();
+		for (LongAdder latency : latencies) latency.reset();
+	}
+	
+	/****************************************************************
+	 * @return the counters as a few lines of text.
+	 ***************************************************************/
+	public String toString() {
+		StringBuilder stats = new StringBuilder();
+		
+		stats.append(String.format("Lookups: %,d, no match: %.2f%%%n",
+				getLookups(), getNoMatchRate() * 100));
+		
+		stats.append("Stopped at level:");
+		for (int i = 0; i < depths.length; i++) {
+			stats.append(String.format(" %d:%,d", i, depths[i].sum()));
+		}
+		
+		stats.append(String.format("%nLatency p50 <%dns p99 <%dns p99.9 <%dns%n",
+				getLatencyPercentile(50), getLatencyPercentile(99),
+				getLatencyPercentile(99.9)));
+		
+		return stats.toString();
+	}
+}
@@ -0,0 +1,242 @@
+package main;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/********************************************************************
+ * Looks up a list of IP addresses, one per line, and writes one
+ * "%-15s %s" line with the next hop for each. The list is read in
+ * large chunks and the dotted quads are parsed in place; IPv4
+ * addresses are resolved in batches and the results are written
+ * through one large buffer, so neither Strings nor a synchronized
+ * write per line are needed. IPv6 addresses go to the Trie6 one at
+ * a time.
+ *
+ * @author agent
+ * @version Oct 17, 2026
+ *******************************************************************/
+public class LookupStream {
+	
+	private static final int CHUNK_SIZE = 1 << 20;
+	
+	/** Number of addresses resolved together */
+	private static final int BATCH_SIZE = 1024;
+	
+	/** Width the address is padded to, as by %-15s */
+	private static final int ADDRESS_WIDTH = 15;
+	
+	private RoutingTable table;
+	private Trie6 table6;
+	
+	private ByteBuffer in;
+	private ByteBuffer out;
+	
+	/* The addresses of the batch, and where their lines are in */
+	private int[] ipv4s;
+	private int[] hops;
+	private int[] lineStarts;
+	private int[] lineEnds;
+	private int batchSize;
+	
+	/** The encoded next hop of each index + 1, 0 being NO_MATCH */
+	private byte[][] hopBytes;
+	
+	/****************************************************************
+	 * @param table resolves the IPv4 addresses.
+	 * @param table6 resolves the IPv6 addresses.
+	 ***************************************************************/
+	public LookupStream(RoutingTable table, Trie6 table6) {
+		this.table = table;
+		this.table6 = table6;
+		
+		in = ByteBuffer.allocate(CHUNK_SIZE);
+		out = ByteBuffer.allocate(CHUNK_SIZE);
+		
+		ipv4s = new int[BATCH_SIZE];
+		hops = new int[BATCH_SIZE];
+		lineStarts = new int[BATCH_SIZE];
+		lineEnds = new int[BATCH_SIZE];
+		
+		hopBytes = new byte[16][];
+	}
+	
+	/****************************************************************
+	 * Looks up every address read from ips, writing the results in
+	 * the same order.
+	 *
+	 * @param ips the list of addresses, one per line.
+	 * @param results receives a line for each address.
+	 * @throws IOException if reading or writing fails.
+	 * @throws IllegalArgumentException if an address is invalid.
+	 ***************************************************************/
+	public void lookUp(ReadableByteChannel ips, WritableByteChannel results)
+			throws IOException {
+		
+		in.clear();
+		out.clear();
+		
+		boolean end = false;
+		
+		while (!end) {
+			end = ips.read(in) < 0;
+			in.flip();
+			
+			int consumed = lookUpLines(end, results);
+			
+			if (consumed == 0 && in.limit() == in.capacity()) {
+				throw new IOException("Line longer than " + CHUNK_SIZE + " bytes");
+			}
+			
+			in.position(consumed);
+			in.compact();
+		}
+		
+		flush(results);
+	}
+	
+	/****************************************************************
+	 * Looks up the complete lines in the input buffer, or every line
+	 * at the end of the input.
+	 *
+	 * @return the number of bytes used.
+	 ***************************************************************/
+	private int lookUpLines(boolean end, WritableByteChannel results)
+			throws IOException {
+		
+		byte[] bytes = in.array();
+		int limit = in.limit();
+		int pos = 0;
+		
+		while (pos < limit) {
+			int lineEnd = pos;
+			while (lineEnd < limit && bytes[lineEnd] != '\n') lineEnd++;
+			
+			/* The rest of the line is in the next chunk */
+			if (lineEnd == limit && !end) break;
+			
+			int next = lineEnd + 1;
+			if (lineEnd > pos && bytes[lineEnd - 1] == '\r') lineEnd--;
+			
+			if (isIPv6(bytes, pos, lineEnd)) {
+				
+				/* Keeps the results in order */
+				resolveBatch(results);
+				
+				String line = new String(bytes, pos, lineEnd - pos,
+						StandardCharsets.ISO_8859_1);
+				writeResult(bytes, pos, lineEnd,
+						table6.lookUp(line).getBytes(StandardCharsets.ISO_8859_1),
+						results);
+			} else {
+				ipv4s[batchSize] = RoutesParser.parseIPv4(in, pos, lineEnd);
+				lineStarts[batchSize] = pos;
+				lineEnds[batchSize] = lineEnd;
+				
+				if (++batchSize == BATCH_SIZE) resolveBatch(results);
+			}
+			
+			pos = next;
+		}
+		
+		/* The lines of the batch are about to be moved */
+		resolveBatch(results);
+		
+		return Math.min(pos, limit);
+	}
+	
+	private static boolean isIPv6(byte[] bytes, int start, int end) {
+		for (int i = start; i < end; i++) {
+			if (bytes[i] == ':') return true;
+		}
+		
+		return false;
+	}
+	
+	/****************************************************************
+	 * Looks up the addresses of the batch and writes their results.
+	 ***************************************************************/
+	private void resolveBatch(WritableByteChannel results) throws IOException {
+		if (batchSize == 0) return;
+		
+		if (table instanceof Trie) {
+			((Trie) table).lookUp(ipv4s, hops, batchSize);
+		} else {
+			for (int i = 0; i < batchSize; i++) hops[i] = table.lookUp(ipv4s[i]);
+		}
+		
+		byte[] bytes = in.array();
+		
+		for (int i = 0; i < batchSize; i++) {
+			writeResult(bytes, lineStarts[i], lineEnds[i], hopBytes(hops[i]),
+					results);
+		}
+		
+		batchSize = 0;
+	}
+	
+	/****************************************************************
+	 * @return the encoded next hop for a next hop index.
+	 ***************************************************************/
+	private byte[] hopBytes(int hop) {
+		if (hop + 1 >= hopBytes.length) {
+			hopBytes = Arrays.copyOf(hopBytes, Math.max(hop + 2, hopBytes.length * 2));
+		}
+		
+		byte[] bytes = hopBytes[hop + 1];
+		
+		if (bytes == null) {
+			bytes = table.getNextHop(hop).getBytes(StandardCharsets.ISO_8859_1);
+			hopBytes[hop + 1] = bytes;
+		}
+		
+		return bytes;
+	}
+	
+	/****************************************************************
+	 * Writes the address from the given line padded to
+	 * ADDRESS_WIDTH, a space and the next hop.
+	 ***************************************************************/
+	private void writeResult(byte[] line, int start, int end, byte[] hop,
+			WritableByteChannel results) throws IOException {
+		
+		write(line, start, end - start, results);
+		
+		for (int i = end - start; i < ADDRESS_WIDTH; i++) write(' ', results);
+		
+		write(' ', results);
+		write(hop, 0, hop.length, results);
+		write('\n', results);
+	}
+	
+	private void write(char b, WritableByteChannel results) throws IOException {
+		if (!out.hasRemaining()) flush(results);
+		
+		out.put((byte) b);
+	}
+	
+	private void write(byte[] bytes, int offset, int length,
+			WritableByteChannel results) throws IOException {
+		
+		while (length > 0) {
+			if (!out.hasRemaining()) flush(results);
+			
+			int count = Math.min(length, out.remaining());
+			out.put(bytes, offset, count);
+			
+			offset += count;
+			length -= count;
+		}
+	}
+	
+	private void flush(WritableByteChannel results) throws IOException {
+		out.flip();
+		
+		while (out.hasRemaining()) results.write(out);
+		
+		out.clear();
+	}
+}
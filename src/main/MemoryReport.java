@@ -0,0 +1,228 @@
+package main;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/********************************************************************
+ * The memory a routing table takes, counted from its own structure
+ * rather than from the heap: bytes, nodes and a histogram of the
+ * number of children per node for each level, plus named parts that
+ * belong to no level such as the prefixes and next hops.
+ *
+ * Sizes follow the object layout of a 64-bit HotSpot JVM with
+ * compressed references: a 12 byte object header, a 16 byte array
+ * header, 4 byte references and every object rounded up to 8 bytes.
+ * Strings are counted with one byte per character.
+ *
+ * @author agent
+ * @version Oct 17, 2026
+ *******************************************************************/
+public class MemoryReport {
+	
+	static final int OBJECT_HEADER = 12;
+	static final int ARRAY_HEADER = 16;
+	static final int REFERENCE = 4;
+	static final int ALIGNMENT = 8;
+	
+	/** Fan-out buckets: 0, 1, 2-3, 4-7 and so on up to 2^31 */
+	private static final int BUCKETS = 33;
+	
+	private String name;
+	
+	private long[] levelBytes;
+	private int[] levelNodes;
+	private long[][] fanOut;
+	
+	/** Bytes of the parts outside the levels, by name */
+	private LinkedHashMap<String, Long> parts;
+	
+	/****************************************************************
+	 * @param name the engine the report is for.
+	 * @param levels the number of levels of the engine.
+	 ***************************************************************/
+	public MemoryReport(String name, int levels) {
+		this.name = name;
+		
+		levelBytes = new long[levels];
+		levelNodes = new int[levels];
+		fanOut = new long[levels][BUCKETS];
+		
+		parts = new LinkedHashMap<String, Long>();
+	}
+	
+	/****************************************************************
+	 * Counts a node.
+	 *
+	 * @param level the level of the node.
+	 * @param bytes the bytes of the node and any arrays only it uses.
+	 * @param children the number of children of the node.
+	 ***************************************************************/
+	void addNode(int level, long bytes, int children) {
+		levelBytes[level] += bytes;
+		levelNodes[level]++;
+		fanOut[level][bucket(children)]++;
+	}
+	
+	/****************************************************************
+	 * Counts bytes of a level that belong to no single node, such as
+	 * unused capacity of the arrays holding the level.
+	 ***************************************************************/
+	void addLevelBytes(int level, long bytes) {
+		levelBytes[level] += bytes;
+	}
+	
+	/****************************************************************
+	 * Counts bytes of a part outside the levels.
+	 ***************************************************************/
+	void addPart(String part, long bytes) {
+		Long sum = parts.get(part);
+		
+		parts.put(part, sum == null ? bytes : sum + bytes);
+	}
+	
+	/****************************************************************
+	 * Counts every level and part of another report as a part of
+	 * this one, for an engine built on top of another.
+	 ***************************************************************/
+	void addPart(String part, MemoryReport report) {
+		addPart(part, report.getTotalBytes());
+	}
+	
+	public String getName() {
+		return name;
+	}
+	
+	public int getNumLevels() {
+		return levelBytes.length;
+	}
+	
+	public long getLevelBytes(int level) {
+		return levelBytes[level];
+	}
+	
+	public int getLevelNodes(int level) {
+		return levelNodes[level];
+	}
+	
+	/****************************************************************
+	 * @param level the level.
+	 * @param bucket 0 for no children, otherwise the nodes with
+	 *        2^(bucket - 1) to 2^bucket - 1 children.
+	 * @return the number of nodes of the level in the bucket.
+	 ***************************************************************/
+	public long getFanOut(int level, int bucket) {
+		return fanOut[level][bucket];
+	}
+	
+	public long getPartBytes(String part) {
+		Long bytes = parts.get(part);
+		
+		return bytes == null ? 0 : bytes;
+	}
+	
+	public long getTotalBytes() {
+		long total = 0;
+		
+		for (long bytes : levelBytes) total += bytes;
+		for (long bytes : parts.values()) total += bytes;
+		
+		return total;
+	}
+	
+	/****************************************************************
+	 * @return the report as a table, a row per level then a row per
+	 *         part.
+	 ***************************************************************/
+	public String toString() {
+		StringBuilder report = new StringBuilder();
+		
+		report.append(String.format("%s: %,d bytes%n", name, getTotalBytes()));
+		report.append(String.format("  %-12s %14s %10s  %s%n", "Level", "Bytes",
+				"Nodes", "Fan-out"));
+		
+		for (int level = 0; level < levelBytes.length; level++) {
+			StringBuilder histogram = new StringBuilder();
+			
+			for (int b = 0; b < BUCKETS; b++) {
+				if (fanOut[level][b] == 0) continue;
+				
+				long low = b == 0 ? 0 : 1L << (b - 1);
+				long high = b == 0 ? 0 : (1L << b) - 1;
+				
+				histogram.append(low == high ? "" + low : low + "-" + high);
+				histogram.append(':').append(fanOut[level][b]).append(' ');
+			}
+			
+			report.append(String.format("  %-12d %,14d %,10d  %s%n", level,
+					levelBytes[level], levelNodes[level], histogram));
+		}
+		
+		for (Map.Entry<String, Long> part : parts.entrySet()) {
+			report.append(String.format("  %-12s %,14d%n", part.getKey(),
+					part.getValue()));
+		}
+		
+		return report.toString();
+	}
+	
+	private static int bucket(int children) {
+		return 32 - Integer.numberOfLeadingZeros(children);
+	}
+	
+	/****************************************************************
+	 * @param references the number of reference fields.
+	 * @param primitiveBytes the bytes of the primitive fields.
+	 * @return the size of an object with those fields.
+	 ***************************************************************/
+	static long objectBytes(int references, int primitiveBytes) {
+		return align(OBJECT_HEADER + references * REFERENCE + primitiveBytes);
+	}
+	
+	/****************************************************************
+	 * @param length the length of the array, 0 for no array.
+	 * @param elementBytes the size of an element.
+	 * @return the size of the array.
+	 ***************************************************************/
+	static long arrayBytes(long length, int elementBytes) {
+		return align(ARRAY_HEADER + length * elementBytes);
+	}
+	
+	static long stringBytes(String string) {
+		return objectBytes(1, 5) + arrayBytes(string.length(), 1);
+	}
+	
+	/****************************************************************
+	 * @return the size of a HashMap with the given number of entries,
+	 *         without the keys and values.
+	 ***************************************************************/
+	static long hashMapBytes(int size) {
+		int capacity = 16;
+		while (capacity * 3 / 4 < size) capacity *= 2;
+		
+		return objectBytes(3, 16) + arrayBytes(capacity, REFERENCE)
+				+ size * objectBytes(3, 4);
+	}
+	
+	/****************************************************************
+	 * @return the size of a NextHopTable and its next hops.
+	 ***************************************************************/
+	static long nextHopBytes(NextHopTable nextHops) {
+		int size = nextHops.size();
+		
+		/* The table, its ArrayList and HashMap, and the boxed indices
+		 * past the cached ones */
+		long bytes = objectBytes(2, 0) + objectBytes(1, 8)
+				+ arrayBytes(size, REFERENCE) + hashMapBytes(size)
+				+ Math.max(0, size - 128) * objectBytes(0, 4);
+		
+		for (int i = 0; i < size; i++) {
+			bytes += stringBytes(nextHops.get(i));
+		}
+		
+		return bytes;
+	}
+	
+	private static long align(long bytes) {
+		return (bytes + ALIGNMENT - 1) / ALIGNMENT * ALIGNMENT;
+	}
+}
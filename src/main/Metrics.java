@@ -7,10 +7,17 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
 import java.util.Scanner;
 
 /********************************************************************
- * Calculates various metrics for each stride length 1-3
+ * Calculates various metrics for each stride length 1-3, a compressed
+ * stride 3 trie, a 16-8-8 stride schedule built serially, in
+ * parallel and behind a LookupCache, the DIR-24-8 table, the
+ * Poptrie, the RangeTable, binary search on prefix lengths and the
+ * Bloom filter engine.
  *
  * @author Jack O'Brien
  * @author Megan Maher
@@ -39,8 +46,37 @@ public class Metrics {
 		mute();
 	}
 	
-	private int strideLength;
-	private final double LOOKUP_RUNS = 3000000.0;
+	/** Drops the lookup results, so only the lookups are timed */
+	private static final WritableByteChannel DISCARD = 
+			new WritableByteChannel() {
+		
+		public int write(ByteBuffer src) {
+			int count = src.remaining();
+			src.position(src.limit());
+			
+			return count;
+		}
+		
+		public boolean isOpen() {
+			return true;
+		}
+		
+		public void close() {
+		}
+	};
+	
+	/** Engines compared, as accepted by Router(String) */
+	private static final String[] ENGINES = {"1", "2", "3", "3:compressed",
+			"16-8-8", "16-8-8:parallel", "16-8-8:cached", "16-8-8:aggregated",
+			"auto", "dir24-8", "poptrie", "range", "lengths", "bloom"};
+	
+	/** Width of each engine's column in the results */
+	private static final int COLUMN = 12;
+	
+	private String engine;
+	
+	/** Each run looks up the whole IP list */
+	private final double LOOKUP_RUNS = 10.0;
 	
 	private String routes;
 	private String ips;
@@ -49,7 +85,9 @@ public class Metrics {
 	
 	private double avgBuild;
 	private double avgLookup;
-	private int avgMemory;
+	
+	/** Memory of the last table built */
+	private MemoryReport memory;
 	
 	private int numRuns;
 	
@@ -57,26 +95,16 @@ public class Metrics {
 	
 	public static int numLinesLookup;
 	
-	public Metrics(int strideLength, int runs, String routes, String ips) {
-		this.strideLength = strideLength;
+	public Metrics(String engine, int runs, String routes, String ips) {
+		this.engine = engine;
 		numRuns = runs;
 		this.routes = routes;
 		this.ips = ips;
 		
 		buildTimes = new long[runs];
 		
-		System.gc();
-		
-		long memoryBefore =  (Runtime.getRuntime().totalMemory() - 
-				Runtime.getRuntime().freeMemory()); 
-		
 		avgBuild = avgBuildTime(runs);
-		
-		long memoryAfter = (Runtime.getRuntime().totalMemory() - 
-				Runtime.getRuntime().freeMemory());
-		memoryAfter -= memoryBefore;
-		avgMemory = (int) (memoryAfter / runs);
-		avgMemory /= 1048576;
+		memory = lastUsed.getMemoryReport();
 		
 		avgLookup = avgLookupTime();
 	}
@@ -110,8 +138,8 @@ public class Metrics {
 		return avgLk;
 	}
 	
-	public int getAvgMemory() {
-		return avgMemory;
+	public MemoryReport getMemoryReport() {
+		return memory;
 	}
 	
 	public int getNumNodes() {
@@ -127,7 +155,7 @@ public class Metrics {
 		Router router = null;
 		
 		for (int i = 0; i < numRuns; i++) {
-			router = new Router(strideLength);
+			router = new Router(engine);
 
 			try {
 				router.setRoutesFile(routes);
@@ -162,9 +190,40 @@ public class Metrics {
 		}
 		lastUsed = router;
 		
+		if (router.getOptimizedStrides() != null) {
+			print("-- Stride schedule " 
+					+ Arrays.toString(router.getOptimizedStrides()));
+		}
+		
+		if (router.isAggregated()) printAggregation(router);
+		
 		return  (totalTime / (double) numRuns);
 	}
 	
+	/****************************************************************
+	 * Prints the routes, nodes and bytes of the engine before and
+	 * after aggregating, building it once more without aggregating.
+	 ***************************************************************/
+	private void printAggregation(Router aggregated) {
+		Router plain = new Router(engine.replace(":aggregated", ""));
+		
+		try {
+			plain.setRoutesFile(routes);
+			plain.populateTrie();
+		} catch (IOException e) {
+			unmute();
+			e.printStackTrace();
+			return;
+		}
+		
+		print("-- Aggregated " + aggregated.getNumRoutesBeforeAggregation() 
+				+ " routes to " + aggregated.getNumRoutesAfterAggregation());
+		print("-- Nodes " + plain.getNumNodes() + " to " 
+				+ aggregated.getNumNodes() + ", bytes " 
+				+ plain.getMemoryReport().getTotalBytes() + " to " 
+				+ aggregated.getMemoryReport().getTotalBytes());
+	}
+	
 	/****************************************************************
 	 * @return the average time in milliseconds of look up per file
 	 ***************************************************************/
@@ -176,7 +235,7 @@ public class Metrics {
 		for (int i = 0; i < LOOKUP_RUNS; i++) {
 			long start = System.currentTimeMillis();
 			try {
-				lastUsed.lookupIPs();
+				lastUsed.lookupIPs(DISCARD);
 			} catch (IOException e) {
 				unmute();
 				e.printStackTrace();
@@ -185,6 +244,29 @@ public class Metrics {
 			totalTime += (System.currentTimeMillis() - start);
 		}
 		print("-- Lookup runs complete");
+		
+		RoutingTable table = lastUsed.getTable();
+		
+		if (LookupStats.ENABLED && table instanceof Trie) {
+			print(((Trie) table).getStats().toString());
+		}
+		
+		if (LookupStats.ENABLED && table instanceof LengthSearchTable) {
+			print(String.format("-- Probes per lookup %.2f", 
+					((LengthSearchTable) table).getProbesPerLookup()));
+		}
+		
+		if (LookupStats.ENABLED && table instanceof BloomFilterTable) {
+			BloomFilterTable bloom = (BloomFilterTable) table;
+			
+			print(String.format("-- Probes per lookup %.2f, false positives %.2f%%",
+					bloom.getProbesPerLookup(), bloom.getFalsePositiveRate() * 100));
+		}
+		
+		if (table instanceof LookupCache) {
+			print(String.format("-- Cache hit ratio %.2f%%", 
+					((LookupCache) table).getHitRatio() * 100));
+		}
 
 		return (totalTime / LOOKUP_RUNS);
 	}
@@ -249,56 +331,68 @@ public class Metrics {
 				
 		mute();
 		
-		print("\nStarting Stride Length 1 Calculations");
-		Metrics m1 = new Metrics(1, numRuns, routerFile, ipFile);
-		double build1 = m1.getAvgBuildTime();
-		double lookup1 = m1.getAvgLookupTime();
-		int nodes1 = m1.getNumNodes();
-		int prefixes1 = m1.getNumPrefixes();
-		int mem1 = m1.avgMemory;
-//		print("Std dev: " + Double.toString(m1.getStdDevBuildTime()));
-		
-		print("\nStarting Stride Length 2 Calculations");
-		Metrics m2 = new Metrics(2, numRuns, routerFile, ipFile);
-		double build2 = m2.getAvgBuildTime();
-		double lookup2 = m2.getAvgLookupTime();
-		int nodes2 = m2.getNumNodes();
-		int prefixes2 = m2.getNumPrefixes();
-		int mem2 = m2.avgMemory;
-//		print("Std dev: " + Double.toString(m2.getStdDevBuildTime()));
-		
-		print("\nStarting Stride Length 3 Calculations");
-		Metrics m3 = new Metrics(3, numRuns, routerFile, ipFile);
-		double build3 = m3.getAvgBuildTime();
-		double lookup3 = m3.getAvgLookupTime();
-		int nodes3 = m3.getNumNodes();
-		int prefixes3 = m3.getNumPrefixes();
-		int mem3 = m3.avgMemory;
-//		print("Std dev: " + Double.toString(m3.getStdDevBuildTime()));
+		int numEngines = ENGINES.length;
+		
+		double[] builds = new double[numEngines];
+		double[] lookups = new double[numEngines];
+		int[] nodes = new int[numEngines];
+		int[] prefixes = new int[numEngines];
+		MemoryReport[] mems = new MemoryReport[numEngines];
+		
+		for (int i = 0; i < numEngines; i++) {
+			print("\nStarting " + ENGINES[i] + " Calculations");
+			Metrics m = new Metrics(ENGINES[i], numRuns, routerFile, ipFile);
+			builds[i] = m.getAvgBuildTime();
+			lookups[i] = m.getAvgLookupTime();
+			nodes[i] = m.getNumNodes();
+			prefixes[i] = m.getNumPrefixes();
+			mems[i] = m.getMemoryReport();
+//			print("Std dev: " + Double.toString(m.getStdDevBuildTime()));
+		}
 		
 		unmute();
 		
 		System.out.println("\n");
-		String header = String.format("%16s | %7s %7s %7s %-7s", 
-				"Stride Length", "1", "2", "3", "Units");
-		System.out.println(header);
-		System.out.println(new String(new char[48]).replace("\0", "-"));
-		
-		String build = String.format("%16s | %7.2f %7.2f %7.2f %-7s", 
-				"Build Time", build1, build2, build3, "sec");
-		String lookup = String.format("%16s | %7.4f %7.4f %7.4f %-7s", 
-				"Search Time", lookup1, lookup2, lookup3, "ns");
-		String nodes = String.format("%16s | %7s %7s %7s %-7s", 
-				"Num Nodes", nodes1, nodes2, nodes3, "nodes");
-		String prefixes = String.format("%16s | %7s %7s %7s %-7s", 
-				"Num Prefixes", prefixes1, prefixes2, prefixes3, "prefixes");
-		String memory = String.format("%16s | %7s %7s %7s %-7s", 
-				"Memory Usage",	mem1, mem2, mem3, "Mb");
-		
-		System.out.println(build);
-		System.out.println(lookup);
-		System.out.println(nodes);
-		System.out.println(prefixes);
-		System.out.println(memory);
+		System.out.println(row("Engine", ENGINES, "Units"));
+		System.out.println(new String(new char[26 + (COLUMN + 1) * numEngines])
+				.replace("\0", "-"));
+		
+		String[] build = new String[numEngines];
+		String[] lookup = new String[numEngines];
+		String[] node = new String[numEngines];
+		String[] prefix = new String[numEngines];
+		String[] memory = new String[numEngines];
+		
+		for (int i = 0; i < numEngines; i++) {
+			build[i] = String.format("%.2f", builds[i]);
+			lookup[i] = String.format("%.4f", lookups[i]);
+			node[i] = Integer.toString(nodes[i]);
+			prefix[i] = Integer.toString(prefixes[i]);
+			memory[i] = String.format("%.2f", mems[i].getTotalBytes() / 1e6);
+		}
+		
+		System.out.println(row("Build Time", build, "sec"));
+		System.out.println(row("Search Time", lookup, "ns"));
+		System.out.println(row("Num Nodes", node, "nodes"));
+		System.out.println(row("Num Prefixes", prefix, "prefixes"));
+		System.out.println(row("Memory Usage", memory, "MB"));
+		
+		for (int i = 0; i < numEngines; i++) {
+			System.out.println();
+			System.out.print(ENGINES[i] + " " + mems[i]);
+		}
+	}
+	
+	/****************************************************************
+	 * Formats one row of the results table.
+	 ***************************************************************/
+	private static String row(String title, String[] values, String units) {
+		StringBuilder row = new StringBuilder(String.format("%16s |", title));
+		
+		for (String value : values) {
+			row.append(String.format(" %" + COLUMN + "s", value));
+		}
+		
+		return row.append(String.format(" %-7s", units)).toString();
 	}	
 }
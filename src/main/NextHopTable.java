@@ -0,0 +1,63 @@
+package main;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/********************************************************************
+ * Interns next hop addresses so that lookups can hand back a small
+ * integer index instead of a String. Index NO_MATCH means no prefix
+ * matched the address.
+ *
+ * @author agent
+ * @version Oct 17, 2026
+ *******************************************************************/
+public class NextHopTable {
+
+	/** Index returned by lookups that matched no prefix. */
+	public static final int NO_MATCH = -1;
+
+	/** Text returned for NO_MATCH. */
+	public static final String NO_MATCH_HOP = "NoMatch";
+
+	private ArrayList<String> hops;
+
+	private HashMap<String, Integer> indices;
+
+	public NextHopTable() {
+		hops = new ArrayList<String>();
+		indices = new HashMap<String, Integer>();
+	}
+
+	/****************************************************************
+	 * Returns the index of the given next hop, adding it to the
+	 * table if it has not been seen before.
+	 *
+	 * @param nextHop the IP address of the next hop.
+	 * @return the index of the next hop.
+	 ***************************************************************/
+	public int intern(String nextHop) {
+		Integer index = indices.get(nextHop);
+
+		if (index == null) {
+			index = hops.size();
+			hops.add(nextHop);
+			indices.put(nextHop, index);
+		}
+
+		return index;
+	}
+
+	/****************************************************************
+	 * @param index an index returned by intern() or NO_MATCH.
+	 * @return the next hop for the index, or "NoMatch".
+	 ***************************************************************/
+	public String get(int index) {
+		if (index == NO_MATCH) return NO_MATCH_HOP;
+
+		return hops.get(index);
+	}
+
+	public int size() {
+		return hops.size();
+	}
+}
@@ -0,0 +1,201 @@
+package main;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/********************************************************************
+ * Looks up a list of IP addresses on several threads, for lists too
+ * long for one core. Works in three stages:
+ *   reader   splits the list into chunks that end on a line break
+ *            and hands each to the workers
+ *   workers  run a LookupStream over each chunk into its own buffer
+ *   writer   writes the buffers in the order of the chunks
+ * The tables are shared and only read. At most queueDepth chunks
+ * are read but not yet written, which bounds the memory used.
+ *
+ * @author agent
+ * @version Oct 17, 2026
+ *******************************************************************/
+public class PipelinedLookup {
+	
+	/** Size of the chunks the list is split into */
+	private static final int CHUNK_SIZE = 1 << 20;
+	
+	/** Marks the end of the chunks in the queue */
+	private static final Future<byte[]> END =
+			CompletableFuture.completedFuture(null);
+	
+	private RoutingTable table;
+	private Trie6 table6;
+	
+	private int threads;
+	private int queueDepth;
+	
+	/****************************************************************
+	 * @param table resolves the IPv4 addresses.
+	 * @param table6 resolves the IPv6 addresses.
+	 * @param threads the number of worker threads.
+	 * @param queueDepth the number of chunks that may be waiting to
+	 *        be looked up or written.
+	 ***************************************************************/
+	public PipelinedLookup(RoutingTable table, Trie6 table6, int threads,
+			int queueDepth) {
+		
+		if (threads < 1 || queueDepth < 1) {
+			throw new IllegalArgumentException("Invalid threads or queue depth");
+		}
+		
+		this.table = table;
+		this.table6 = table6;
+		this.threads = threads;
+		this.queueDepth = queueDepth;
+	}
+	
+	/****************************************************************
+	 * Looks up every address read from ips, writing the results in
+	 * the same order as LookupStream does. The calling thread is the
+	 * writer.
+	 *
+	 * @param ips the list of addresses, one per line.
+	 * @param results receives a line for each address.
+	 * @throws IOException if reading, a lookup or writing fails.
+	 ***************************************************************/
+	public void lookUp(final ReadableByteChannel ips,
+			WritableByteChannel results) throws IOException {
+		
+		final ExecutorService workers = Executors.newFixedThreadPool(threads);
+		final BlockingQueue<Future<byte[]>> chunks =
+				new ArrayBlockingQueue<Future<byte[]>>(queueDepth);
+		
+		/* One LookupStream per worker, as each holds its buffers */
+		final ThreadLocal<LookupStream> streams = new ThreadLocal<LookupStream>() {
+			protected LookupStream initialValue() {
+				return new LookupStream(table, table6);
+			}
+		};
+		
+		final Throwable[] readFailure = new Throwable[1];
+		
+		Thread reader = new Thread("PipelinedLookup reader") {
+			public void run() {
+				try {
+					read(ips, workers, chunks, streams);
+				} catch (Throwable e) {
+					readFailure[0] = e;
+				} finally {
+					/* Interrupted only once the writer has stopped taking */
+					if (!(readFailure[0] instanceof InterruptedException)) {
+						try {
+							chunks.put(END);
+						} catch (InterruptedException e) {
+							/* The writer has stopped as well */
+						}
+					}
+				}
+			}
+		};
+		
+		reader.start();
+		
+		try {
+			while (true) {
+				Future<byte[]> chunk = chunks.take();
+				if (chunk == END) break;
+				
+				ByteBuffer out = ByteBuffer.wrap(chunk.get());
+				while (out.hasRemaining()) results.write(out);
+			}
+			
+			reader.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException();
+		} catch (ExecutionException e) {
+			throw failure(e.getCause());
+		} finally {
+			reader.interrupt();
+			workers.shutdownNow();
+		}
+		
+		if (readFailure[0] != null) throw failure(readFailure[0]);
+	}
+	
+	/****************************************************************
+	 * Rethrows an unchecked failure of another stage on the writer.
+	 *
+	 * @return the failure to throw, if checked.
+	 ***************************************************************/
+	private static IOException failure(Throwable cause) {
+		if (cause instanceof IOException) return (IOException) cause;
+		if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+		if (cause instanceof Error) throw (Error) cause;
+		
+		return new IOException(cause);
+	}
+	
+	/****************************************************************
+	 * The reader stage. Splits the list into chunks ending on a line
+	 * break, queueing the lookup of each in order.
+	 ***************************************************************/
+	private void read(ReadableByteChannel ips, ExecutorService workers,
+			BlockingQueue<Future<byte[]>> chunks,
+			final ThreadLocal<LookupStream> streams)
+			throws IOException, InterruptedException {
+		
+		byte[] carry = new byte[0];
+		boolean end = false;
+		
+		while (!end) {
+			ByteBuffer in = ByteBuffer.allocate(CHUNK_SIZE);
+			in.put(carry);
+			
+			while (in.hasRemaining() && !end) end = ips.read(in) < 0;
+			
+			final byte[] chunk = in.array();
+			final int length;
+			
+			if (end) {
+				length = in.position();
+			} else {
+				int cut = in.position();
+				while (cut > 0 && chunk[cut - 1] != '\n') cut--;
+				
+				if (cut == 0) {
+					throw new IOException("Line longer than " + CHUNK_SIZE + " bytes");
+				}
+				length = cut;
+			}
+			
+			carry = Arrays.copyOfRange(chunk, length, in.position());
+			
+			if (length == 0) continue;
+			
+			chunks.put(workers.submit(new Callable<byte[]>() {
+				public byte[] call() throws IOException {
+					ByteArrayOutputStream out = new ByteArrayOutputStream(length * 2);
+					
+					streams.get().lookUp(
+							Channels.newChannel(new ByteArrayInputStream(chunk, 0, length)),
+							Channels.newChannel(out));
+					
+					return out.toByteArray();
+				}
+			}));
+		}
+	}
+}
@@ -0,0 +1,317 @@
+package main;
+
+import java.util.Arrays;
+
+/********************************************************************
+ * Poptrie (Asai and Ohara) style multibit trie. The first 16 bits
+ * of an address index a direct table; below it every node has a
+ * stride of 6 and is four words:
+ *   vector   bit i set if slot i has a child node
+ *   leafvec  bit i set if slot i starts a new run of equal next
+ *            hops among the slots without a child
+ *   base1    index of the node's first child, the children are
+ *            stored together in slot order
+ *   base0    index of the node's first leaf in the leaves array
+ * A slot's child or leaf is found by counting the set bits up to it
+ * with Long.bitCount, so empty slots take no space and runs of the
+ * same next hop are stored once.
+ *
+ * Routes are kept in a PrefixRoutes and the compact encoding is
+ * compiled on the first lookup after a change, through a Trie with
+ * the matching strides that is dropped once the encoding is built.
+ *
+ * A direct table entry is node + 1 for a node, or -hop - 2 for a
+ * next hop (so NO_MATCH is -1).
+ *
+ * @author agent
+ * @version Oct 17, 2026
+ *******************************************************************/
+public class PopTrie implements RoutingTable {
+	
+	private static final int DIRECT_BITS = 16;
+	private static final int STRIDE = 6;
+	
+	/** Strides of the Trie the encoding is compiled through */
+	private static final int[] STRIDES = {DIRECT_BITS, STRIDE, STRIDE, 
+			STRIDE};
+	
+	/** Every route added and the encoding compiled from them */
+	private PrefixRoutes<Encoding> routes;
+	
+	private NextHopTable nextHops;
+	
+	public PopTrie() {
+		this(new NextHopTable());
+	}
+	
+	/****************************************************************
+	 * @param nextHops the table interning the next hops, which may
+	 *        be shared with other tables.
+	 ***************************************************************/
+	public PopTrie(NextHopTable nextHops) {
+		this.nextHops = nextHops;
+		
+		routes = new PrefixRoutes<Encoding>(nextHops) {
+			protected Encoding compile() {
+				return build();
+			}
+		};
+	}
+	
+	public void add(String prefix, int prefixLength, String nextHop) {
+		routes.add(prefix, prefixLength, nextHop);
+	}
+	
+	public void add(int prefix, int prefixLength, String nextHop) {
+		routes.add(prefix, prefixLength, nextHop);
+	}
+	
+	public void add(int prefix, int prefixLength, int hop) {
+		routes.add(prefix, prefixLength, hop);
+	}
+	
+	public String lookUp(String ipAddr) {
+		return getNextHop(lookUp(Trie.convertIPtoInt(ipAddr, 32)));
+	}
+	
+	public int lookUp(int ipv4) {
+		Encoding e = routes.get();
+		
+		int entry = e.direct[ipv4 >>> (32 - DIRECT_BITS)];
+		if (entry <= 0) return -entry - 2;
+		
+		int node = entry - 1;
+		int shift = DIRECT_BITS;
+		
+		while (true) {
+			int index = (ipv4 << shift) >>> (32 - STRIDE);
+			long upTo = (2L << index) - 1;
+			long vector = e.vector[node];
+			
+			if ((vector & (1L << index)) == 0) {
+				int leaf = Long.bitCount(e.leafvec[node] & upTo) - 1;
+				return e.leaves[e.base0[node] + leaf];
+			}
+			
+			node = e.base1[node] + Long.bitCount(vector & upTo) - 1;
+			shift += STRIDE;
+		}
+	}
+	
+	public String getNextHop(int index) {
+		return nextHops.get(index);
+	}
+	
+	public NextHopTable getNextHops() {
+		return nextHops;
+	}
+	
+	/****************************************************************
+	 * @return the number of nodes below the direct table.
+	 ***************************************************************/
+	public int getNumNodes() {
+		Encoding e = routes.get();
+		
+		return e.numNodes;
+	}
+	
+	public int getNumPrefixes() {
+		return routes.size();
+	}
+	
+	/****************************************************************
+	 * Counts the direct table as the first level and each node of
+	 * four words under its level, then the leaves, the routes and 
+	 * the next hops.
+	 * 
+	 * @return the memory report.
+	 ***************************************************************/
+	public MemoryReport getMemoryReport() {
+		Encoding e = routes.get();
+		
+		MemoryReport report = new MemoryReport("PopTrie", 4);
+		int children = 0;
+		
+		for (int entry : e.direct) {
+			if (entry <= 0) continue;
+			
+			children++;
+			countNodes(e, entry - 1, 1, report);
+		}
+		
+		report.addNode(0, MemoryReport.arrayBytes(e.direct.length, 4), children);
+		report.addLevelBytes(1, 2 * MemoryReport.arrayBytes(0, 8) 
+				+ 2 * MemoryReport.arrayBytes(0, 4));
+		report.addPart("leaves", MemoryReport.arrayBytes(e.numLeaves, 4));
+		
+		report.addPart("routes", routes.getBytes());
+		report.addPart("next hops", MemoryReport.nextHopBytes(nextHops));
+		
+		return report;
+	}
+	
+	private static void countNodes(Encoding e, int node, int level, 
+			MemoryReport report) {
+		
+		int children = Long.bitCount(e.vector[node]);
+		
+		for (int i = 0; i < children; i++) {
+			countNodes(e, e.base1[node] + i, level + 1, report);
+		}
+		
+		report.addNode(level, 8 + 8 + 4 + 4, children);
+	}
+	
+	/****************************************************************
+	 * Compiles the routes into the compact encoding, called by routes
+	 * holding its lock.
+	 ***************************************************************/
+	private Encoding build() {
+		
+		/* Only lives while the encoding is compiled */
+		Trie builder = new Trie(STRIDES, nextHops);
+		builder.beginUpdate();
+		
+		int count = routes.size();
+		for (int i = 0; i < count; i++) {
+			builder.add(routes.getPrefix(i), routes.getLength(i), routes.getHop(i));
+		}
+		
+		builder.commitUpdate();
+		
+		Encoding e = new Encoding();
+		Trie.Node root = builder.getRoot();
+		int rootHop = hopOf(root, NextHopTable.NO_MATCH);
+		
+		for (int i = 0; i < e.direct.length; i++) {
+			Trie.Node child = root.children != null ? root.children[i] : null;
+			
+			if (child == null) {
+				e.direct[i] = -rootHop - 2;
+			} else if (child.children == null) {
+				e.direct[i] = -hopOf(child, rootHop) - 2;
+			} else {
+				int node = e.allocate(1);
+				e.compile(child, rootHop, node);
+				e.direct[i] = node + 1;
+			}
+		}
+		
+		e.trim();
+		
+		return e;
+	}
+	
+	private static int hopOf(Trie.Node node, int inherited) {
+		if (node.prefix == null) return inherited;
+		
+		return node.prefix.hop;
+	}
+	
+	/****************************************************************
+	 * The arrays of one compiled version, never changed once built.
+	 ***************************************************************/
+	private static class Encoding {
+		
+		int[] direct = new int[1 << DIRECT_BITS];
+		
+		long[] vector = new long[1024];
+		long[] leafvec = new long[1024];
+		int[] base0 = new int[1024];
+		int[] base1 = new int[1024];
+		int numNodes;
+		
+		int[] leaves = new int[1024];
+		int numLeaves;
+		
+		/****************************************************************
+		 * Reserves consecutive node indices.
+		 *
+		 * @return the first of them.
+		 ***************************************************************/
+		int allocate(int count) {
+			int first = numNodes;
+			numNodes += count;
+			
+			if (numNodes > vector.length) {
+				int length = Math.max(numNodes, vector.length * 2);
+				
+				vector = Arrays.copyOf(vector, length);
+				leafvec = Arrays.copyOf(leafvec, length);
+				base0 = Arrays.copyOf(base0, length);
+				base1 = Arrays.copyOf(base1, length);
+			}
+			
+			return first;
+		}
+		
+		/****************************************************************
+		 * Encodes a Trie node with children and everything below it.
+		 *
+		 * @param source the Trie node.
+		 * @param inherited the next hop of the closest ancestor prefix.
+		 * @param node the index reserved for the node.
+		 ***************************************************************/
+		void compile(Trie.Node source, int inherited, int node) {
+			int hop = hopOf(source, inherited);
+			
+			long vec = 0;
+			long leafv = 0;
+			int last = 0;
+			boolean first = true;
+			
+			base0[node] = numLeaves;
+			
+			for (int i = 0; i < source.children.length; i++) {
+				Trie.Node child = source.children[i];
+				
+				if (child != null && child.children != null) {
+					vec |= 1L << i;
+					continue;
+				}
+				
+				int leaf = child == null ? hop : hopOf(child, hop);
+				
+				/* Starts a new run of leaves */
+				if (first || leaf != last) {
+					leafv |= 1L << i;
+					addLeaf(leaf);
+					
+					last = leaf;
+					first = false;
+				}
+			}
+			
+			vector[node] = vec;
+			leafvec[node] = leafv;
+			
+			int children = allocate(Long.bitCount(vec));
+			base1[node] = children;
+			
+			for (int i = 0; i < source.children.length; i++) {
+				if ((vec & (1L << i)) == 0) continue;
+				
+				compile(source.children[i], hop, children++);
+			}
+		}
+		
+		private void addLeaf(int hop) {
+			if (numLeaves == leaves.length) {
+				leaves = Arrays.copyOf(leaves, leaves.length * 2);
+			}
+			
+			leaves[numLeaves++] = hop;
+		}
+		
+		/****************************************************************
+		 * Drops the unused capacity of the arrays.
+		 ***************************************************************/
+		void trim() {
+			vector = Arrays.copyOf(vector, numNodes);
+			leafvec = Arrays.copyOf(leafvec, numNodes);
+			base0 = Arrays.copyOf(base0, numNodes);
+			base1 = Arrays.copyOf(base1, numNodes);
+			leaves = Arrays.copyOf(leaves, numLeaves);
+		}
+	}
+}
@@ -0,0 +1,21 @@
+package main;
+
+/********************************************************************
+ * Told by a Trie each time a published change may alter the lookups
+ * of the addresses under a prefix, see Trie.addChangeListener().
+ *
+ * @author agent
+ * @version Oct 18, 2026
+ *******************************************************************/
+public interface PrefixChangeListener {
+	
+	/****************************************************************
+	 * Called by the writer once the change is published.
+	 *
+	 * @param prefix the bits of the prefix, left aligned. Bits past
+	 *        the prefix length are zero.
+	 * @param prefixLength the number of bits in the prefix, 0 for a
+	 *        change that may alter any lookup.
+	 ***************************************************************/
+	void prefixChanged(int prefix, int prefixLength);
+}
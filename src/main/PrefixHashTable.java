@@ -0,0 +1,103 @@
+package main;
+
+/********************************************************************
+ * An open addressing hash table from the bits of prefixes of one
+ * length to an int, for the engines that keep a table per prefix
+ * length. Each entry is one long holding the key in its high half
+ * and value + 2 in its low half, 0 being an empty slot, so a probe
+ * reads a single array element and nothing is boxed. Collisions are
+ * resolved by linear probing and the table doubles when half full.
+ *
+ * @author agent
+ * @version Oct 17, 2026
+ *******************************************************************/
+public class PrefixHashTable {
+	
+	/** Returned by get() for a key not in the table */
+	public static final int MISSING = -2;
+	
+	private long[] slots;
+	
+	/** Number of bits indexing the slots */
+	private int bits;
+	
+	private int size;
+	
+	/****************************************************************
+	 * @param expected the number of entries expected, used to size
+	 *        the table so that it need not grow.
+	 ***************************************************************/
+	public PrefixHashTable(int expected) {
+		bits = 4;
+		while (1 << (bits - 1) < expected) bits++;
+		
+		slots = new long[1 << bits];
+	}
+	
+	/****************************************************************
+	 * @param key the bits of a prefix.
+	 * @return the value of the key, or MISSING.
+	 ***************************************************************/
+	public int get(int key) {
+		long[] slots = this.slots;
+		int mask = slots.length - 1;
+		
+		for (int i = hash(key, bits); ; i = (i + 1) & mask) {
+			long slot = slots[i];
+			
+			if (slot == 0) return MISSING;
+			if ((int) (slot >>> 32) == key) return (int) slot - 2;
+		}
+	}
+	
+	/****************************************************************
+	 * Sets the value of a key, adding the key if it is not there.
+	 *
+	 * @param key the bits of a prefix.
+	 * @param value the value, -1 or more.
+	 ***************************************************************/
+	public void put(int key, int value) {
+		if (value < -1) throw new IllegalArgumentException("Invalid value");
+		
+		if (2 * (size + 1) > slots.length) grow();
+		
+		int mask = slots.length - 1;
+		int i = hash(key, bits);
+		
+		while (slots[i] != 0 && (int) (slots[i] >>> 32) != key) {
+			i = (i + 1) & mask;
+		}
+		
+		if (slots[i] == 0) size++;
+		
+		slots[i] = (long) key << 32 | ((value + 2) & 0xFFFFFFFFL);
+	}
+	
+	public int size() {
+		return size;
+	}
+	
+	/****************************************************************
+	 * @return the size of the table in bytes, see MemoryReport.
+	 ***************************************************************/
+	public long getBytes() {
+		return MemoryReport.objectBytes(1, 8) 
+				+ MemoryReport.arrayBytes(slots.length, 8);
+	}
+	
+	private void grow() {
+		long[] old = slots;
+		
+		bits++;
+		slots = new long[1 << bits];
+		size = 0;
+		
+		for (long slot : old) {
+			if (slot != 0) put((int) (slot >>> 32), (int) slot - 2);
+		}
+	}
+	
+	private static int hash(int key, int bits) {
+		return (key * 0x9E3779B9) >>> (32 - bits);
+	}
+}
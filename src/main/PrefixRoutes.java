@@ -0,0 +1,213 @@
+package main;
+
+import java.util.Arrays;
+
+/********************************************************************
+ * The routes of an engine that is compiled from all of its routes at
+ * once, and the compiled form of the latest ones. The routes are
+ * three int arrays, as in a RouteList: the prefix (left aligned, the
+ * bits past its length cleared), the length and the next hop. Adding
+ * appends; the arrays are sorted by first address, shorter prefixes
+ * first, and only the last route added for each prefix kept, before
+ * every compile and whenever they fill up.
+ *
+ * The compiled form is built by compile() on the first call to get()
+ * after a change, holding the lock, and published through a volatile
+ * field so that lookups need no lock.
+ *
+ * @param <T> the compiled form.
+ *
+ * @author agent
+ * @version Oct 18, 2026
+ *******************************************************************/
+abstract class PrefixRoutes<T> {
+	
+	/** Bits of a sort key holding the index of the route */
+	private static final int INDEX_BITS = 26;
+	
+	private NextHopTable nextHops;
+	
+	private int[] prefixes;
+	private int[] lengths;
+	private int[] hops;
+	private int size;
+	
+	/** Whether the routes are sorted with one per prefix */
+	private boolean sorted = true;
+	
+	/** The compiled form, null after a change */
+	private volatile T compiled;
+	
+	/****************************************************************
+	 * @param nextHops the table interning the next hops.
+	 ***************************************************************/
+	PrefixRoutes(NextHopTable nextHops) {
+		this.nextHops = nextHops;
+		
+		prefixes = new int[1024];
+		lengths = new int[1024];
+		hops = new int[1024];
+	}
+	
+	void add(String prefix, int prefixLength, String nextHop) {
+		add(Trie.convertIPtoInt(prefix, 32), prefixLength, nextHop);
+	}
+	
+	void add(int prefix, int prefixLength, String nextHop) {
+		add(prefix, prefixLength, nextHops.intern(nextHop));
+	}
+	
+	/****************************************************************
+	 * Adds a route, replacing any with the same prefix.
+	 *
+	 * @param prefix the prefix bits, left aligned.
+	 * @param prefixLength the number of bits in the prefix.
+	 * @param hop the index of the next hop in the next hop table.
+	 ***************************************************************/
+	synchronized void add(int prefix, int prefixLength, int hop) {
+		if (prefixLength < 0 || prefixLength > 32) {
+			throw new IllegalArgumentException("Invalid prefix length");
+		}
+		
+		if (hop < 0 || hop >= nextHops.size()) {
+			throw new IllegalArgumentException("Unknown next hop: " + hop);
+		}
+		
+		if (size == prefixes.length) grow();
+		
+		prefixes[size] = prefixLength == 0 ? 0 : prefix & (-1 << (32 - prefixLength));
+		lengths[size] = prefixLength;
+		hops[size] = hop;
+		size++;
+		
+		sorted = false;
+		compiled = null;
+	}
+	
+	/****************************************************************
+	 * @return the routes compiled, compiling them if they changed.
+	 ***************************************************************/
+	T get() {
+		T c = compiled;
+		
+		return c != null ? c : compileLatest();
+	}
+	
+	/****************************************************************
+	 * Compiles the routes, unless another thread just did.
+	 ***************************************************************/
+	private synchronized T compileLatest() {
+		if (compiled == null) {
+			sort();
+			compiled = compile();
+		}
+		
+		return compiled;
+	}
+	
+	/****************************************************************
+	 * Builds the compiled form. Called holding the lock, with the
+	 * routes sorted by first address and one per prefix, so that
+	 * getPrefix(), getLength() and getHop() may be read in order.
+	 *
+	 * @return the compiled form.
+	 ***************************************************************/
+	protected abstract T compile();
+	
+	/****************************************************************
+	 * @return the number of prefixes.
+	 ***************************************************************/
+	synchronized int size() {
+		sort();
+		
+		return size;
+	}
+	
+	int getPrefix(int index) {
+		return prefixes[index];
+	}
+	
+	int getLength(int index) {
+		return lengths[index];
+	}
+	
+	int getHop(int index) {
+		return hops[index];
+	}
+	
+	/****************************************************************
+	 * @return the bytes of the route arrays.
+	 ***************************************************************/
+	synchronized long getBytes() {
+		return 3 * MemoryReport.arrayBytes(prefixes.length, 4);
+	}
+	
+	/****************************************************************
+	 * @param bits the prefix bits, right aligned.
+	 * @param length the number of bits in the prefix.
+	 * @return a key telling the prefix from every other one.
+	 ***************************************************************/
+	static long key(int bits, int length) {
+		return ((long) length << 32) | (bits & 0xFFFFFFFFL);
+	}
+	
+	/****************************************************************
+	 * Makes room for a route, dropping the replaced ones first and
+	 * doubling the arrays if they are still more than half full.
+	 ***************************************************************/
+	private void grow() {
+		sort();
+		
+		if (2 * size <= prefixes.length) return;
+		
+		if (prefixes.length == 1 << INDEX_BITS) {
+			throw new IllegalStateException("Too many routes");
+		}
+		
+		prefixes = Arrays.copyOf(prefixes, prefixes.length * 2);
+		lengths = Arrays.copyOf(lengths, lengths.length * 2);
+		hops = Arrays.copyOf(hops, hops.length * 2);
+	}
+	
+	/****************************************************************
+	 * Sorts the routes by first address and length, keeping the last
+	 * route added for each prefix.
+	 ***************************************************************/
+	private void sort() {
+		if (sorted) return;
+		
+		/* Prefix, length and index, the sign flipped so that a signed
+		 * sort orders the prefixes as unsigned addresses */
+		long[] keys = new long[size];
+		
+		for (int i = 0; i < size; i++) {
+			keys[i] = ((long) prefixes[i] << 32 | (long) lengths[i] << INDEX_BITS | i)
+					^ Long.MIN_VALUE;
+		}
+		Arrays.sort(keys);
+		
+		int[] sortedPrefixes = new int[prefixes.length];
+		int[] sortedLengths = new int[lengths.length];
+		int[] sortedHops = new int[hops.length];
+		int n = 0;
+		
+		for (int k = 0; k < size; k++) {
+			
+			/* Of the routes for one prefix the last added sorts last */
+			if (k + 1 < size && (keys[k] ^ keys[k + 1]) >>> INDEX_BITS == 0) continue;
+			
+			int i = (int) keys[k] & ((1 << INDEX_BITS) - 1);
+			
+			sortedPrefixes[n] = prefixes[i];
+			sortedLengths[n] = lengths[i];
+			sortedHops[n] = hops[i];
+			n++;
+		}
+		
+		prefixes = sortedPrefixes;
+		lengths = sortedLengths;
+		hops = sortedHops;
+		size = n;
+		sorted = true;
+	}
+}
@@ -0,0 +1,265 @@
+package main;
+
+import java.util.Arrays;
+
+/********************************************************************
+ * Longest prefix match by binary search over address ranges. The
+ * prefixes split the address space into disjoint ranges that each
+ * have one next hop; neighbouring ranges with the same next hop are
+ * merged. Only the boundaries where the next hop changes are kept,
+ * in a sorted int array, so the memory is linear in the number of
+ * prefixes whatever their lengths.
+ *
+ * The boundaries are stored in Eytzinger (breadth first) order:
+ * the children of index k are 2k and 2k + 1, so the first steps of
+ * every search share a few cache lines and each step picks the next
+ * index with arithmetic instead of a branch. A lookup finds the
+ * first boundary above the address; the range ending there is the
+ * one holding it.
+ *
+ * Routes are kept in a PrefixRoutes and the ranges are built on the
+ * first lookup after a change: the prefixes, sorted by first address
+ * and longest last, have their endpoints swept with a stack of the
+ * prefixes covering the current address, whose top gives its next
+ * hop. Nothing is expanded to strides at any point.
+ *
+ * @author agent
+ * @version Oct 17, 2026
+ *******************************************************************/
+public class RangeTable implements RoutingTable {
+	
+	/** Every route added and the ranges built from them */
+	private PrefixRoutes<Ranges> routes;
+	
+	private NextHopTable nextHops;
+	
+	public RangeTable() {
+		this(new NextHopTable());
+	}
+	
+	/****************************************************************
+	 * @param nextHops the table interning the next hops, which may
+	 *        be shared with other tables.
+	 ***************************************************************/
+	public RangeTable(NextHopTable nextHops) {
+		this.nextHops = nextHops;
+		
+		routes = new PrefixRoutes<Ranges>(nextHops) {
+			protected Ranges compile() {
+				return build();
+			}
+		};
+	}
+	
+	public void add(String prefix, int prefixLength, String nextHop) {
+		routes.add(prefix, prefixLength, nextHop);
+	}
+	
+	public void add(int prefix, int prefixLength, String nextHop) {
+		routes.add(prefix, prefixLength, nextHop);
+	}
+	
+	public void add(int prefix, int prefixLength, int hop) {
+		routes.add(prefix, prefixLength, hop);
+	}
+	
+	public String lookUp(String ipAddr) {
+		return getNextHop(lookUp(Trie.convertIPtoInt(ipAddr, 32)));
+	}
+	
+	public int lookUp(int ipv4) {
+		Ranges r = routes.get();
+		
+		int[] bounds = r.bounds;
+		int size = r.size;
+		
+		/* Boundaries are stored with the sign bit flipped so that a
+		 * signed comparison orders them as unsigned addresses */
+		int key = ipv4 ^ Integer.MIN_VALUE;
+		int k = 1;
+		
+		while (k <= size) k = 2 * k + (bounds[k] <= key ? 1 : 0);
+		
+		/* Climbs back to the last node the search went left at */
+		k >>>= Integer.numberOfTrailingZeros(~k) + 1;
+		
+		return k == 0 ? r.lastHop : r.hops[k];
+	}
+	
+	public String getNextHop(int index) {
+		return nextHops.get(index);
+	}
+	
+	public NextHopTable getNextHops() {
+		return nextHops;
+	}
+	
+	/****************************************************************
+	 * @return the number of ranges.
+	 ***************************************************************/
+	public int getNumNodes() {
+		return routes.get().size + 1;
+	}
+	
+	public int getNumPrefixes() {
+		return routes.size();
+	}
+	
+	/****************************************************************
+	 * Counts the ranges as a single node with a child per boundary,
+	 * then the routes and the next hops.
+	 *
+	 * @return the memory report.
+	 ***************************************************************/
+	public MemoryReport getMemoryReport() {
+		Ranges r = routes.get();
+		
+		MemoryReport report = new MemoryReport("RangeTable", 1);
+		
+		report.addNode(0, MemoryReport.arrayBytes(r.bounds.length, 4)
+				+ MemoryReport.arrayBytes(r.hops.length, 4), r.size);
+		
+		report.addPart("routes", routes.getBytes());
+		report.addPart("next hops", MemoryReport.nextHopBytes(nextHops));
+		
+		return report;
+	}
+	
+	/****************************************************************
+	 * Builds the ranges from the routes, called by routes holding
+	 * its lock with the prefixes sorted by first address.
+	 ***************************************************************/
+	private Ranges build() {
+		Ranges r = new Ranges();
+		
+		/* The prefixes covering the current address, innermost on top */
+		long[] ends = new long[33];
+		int[] hops = new int[33];
+		int depth = 0;
+		
+		/* The first address with no range yet */
+		long next = 0;
+		int count = routes.size();
+		
+		for (int i = 0; i < count; i++) {
+			long start = routes.getPrefix(i) & 0xFFFFFFFFL;
+			int length = routes.getLength(i);
+			
+			/* Ends the ranges of the prefixes over before this one */
+			while (depth > 0 && ends[depth - 1] < start) {
+				depth--;
+				
+				if (next <= ends[depth]) {
+					r.addRange((int) next, hops[depth]);
+					next = ends[depth] + 1;
+				}
+			}
+			
+			if (next < start) {
+				r.addRange((int) next, 
+						depth > 0 ? hops[depth - 1] : NextHopTable.NO_MATCH);
+				next = start;
+			}
+			
+			ends[depth] = start + (1L << (32 - length)) - 1;
+			hops[depth] = routes.getHop(i);
+			depth++;
+		}
+		
+		while (depth > 0) {
+			depth--;
+			
+			if (next <= ends[depth]) {
+				r.addRange((int) next, hops[depth]);
+				next = ends[depth] + 1;
+			}
+		}
+		
+		if (next <= 0xFFFFFFFFL) r.addRange((int) next, NextHopTable.NO_MATCH);
+		
+		r.layOut();
+		
+		return r;
+	}
+	
+	/****************************************************************
+	 * The arrays of one compiled version, never changed once built.
+	 ***************************************************************/
+	private static class Ranges {
+		
+		/** Boundaries in Eytzinger order from index 1, sign flipped */
+		int[] bounds;
+		
+		/** Next hop of the range ending at each boundary */
+		int[] hops;
+		
+		/** Number of boundaries */
+		int size;
+		
+		/** Next hop of the range after the last boundary */
+		int lastHop = NextHopTable.NO_MATCH;
+		
+		/* The boundaries in address order while sweeping */
+		private int[] sorted = new int[1024];
+		private int[] sortedHops = new int[1024];
+		
+		/** Whether a range has started, the one from address 0 */
+		private boolean started;
+		
+		/****************************************************************
+		 * Starts a range at the given address, unless it has the same
+		 * next hop as the range before it.
+		 ***************************************************************/
+		void addRange(int start, int hop) {
+			if (!started) {
+				started = true;
+				lastHop = hop;
+				return;
+			}
+			
+			if (hop == lastHop) return;
+			
+			if (size == sorted.length) {
+				sorted = Arrays.copyOf(sorted, size * 2);
+				sortedHops = Arrays.copyOf(sortedHops, size * 2);
+			}
+			
+			sorted[size] = start ^ Integer.MIN_VALUE;
+			sortedHops[size] = lastHop;
+			size++;
+			
+			lastHop = hop;
+		}
+		
+		/****************************************************************
+		 * Moves the boundaries into Eytzinger order.
+		 ***************************************************************/
+		void layOut() {
+			bounds = new int[size + 1];
+			hops = new int[size + 1];
+			
+			place(0, 1);
+			
+			sorted = null;
+			sortedHops = null;
+		}
+		
+		/****************************************************************
+		 * Places the subtree rooted at index k, an in-order walk of the
+		 * implicit tree taking the sorted boundaries from next.
+		 *
+		 * @return the index of the next sorted boundary.
+		 ***************************************************************/
+		private int place(int next, int k) {
+			if (k > size) return next;
+			
+			next = place(next, 2 * k);
+			
+			bounds[k] = sorted[next];
+			hops[k] = sortedHops[next];
+			next++;
+			
+			return place(next, 2 * k + 1);
+		}
+	}
+}
@@ -0,0 +1,220 @@
+package main;
+
+import java.util.Arrays;
+
+/********************************************************************
+ * Replaces a list of IPv4 routes with the fewest routes that give
+ * every address the same next hop, using the Optimal Routing Table
+ * Constructor of Draves, King, Venkatachary and Zill. Adjacent or
+ * nested prefixes with the same next hop collapse into one, so every
+ * engine built from the result has fewer prefixes and nodes.
+ *
+ * The routes go into a 1-bit trie, then three passes run over it:
+ *   1. every node gets zero or two children, the missing child
+ *      taking the next hop of its closest ancestor prefix;
+ *   2. bottom up, each leaf's set of candidate next hops is its own
+ *      next hop and each inner node's is the intersection of its
+ *      children's sets if not empty, otherwise their union;
+ *   3. top down, a node keeps the next hop it inherits if that is in
+ *      its set and otherwise becomes a route to any hop of the set.
+ *
+ * A table cannot hold a route to "no match", so no route may cover
+ * an address that had none. Any node above such an address is given
+ * the set holding only NO_MATCH, and the ancestors of a route are
+ * then never routes themselves.
+ *
+ * @author agent
+ * @version Oct 17, 2026
+ *******************************************************************/
+public class RouteAggregator {
+	
+	/** The next hop of a node that is not a prefix */
+	private static final int NONE = -2;
+	
+	private static final int[] NO_MATCH_SET = {NextHopTable.NO_MATCH};
+	
+	/* The 1-bit trie, a node per index, 0 being the root and no child */
+	private int[] zero;
+	private int[] one;
+	private int[] hops;
+	private int[][] sets;
+	
+	private int numNodes;
+	
+	/****************************************************************
+	 * Computes the smallest list of routes matching every address as
+	 * the given routes do. Of routes with the same prefix the last
+	 * one wins, as when adding them to a table.
+	 *
+	 * @param routes the routes.
+	 * @return the aggregated routes, sharing the next hop table.
+	 ***************************************************************/
+	public static RouteList aggregate(RouteList routes) {
+		return new RouteAggregator().run(routes);
+	}
+	
+	private RouteAggregator() {
+		zero = new int[1024];
+		one = new int[1024];
+		hops = new int[1024];
+		
+		newNode(NONE);
+	}
+	
+	private RouteList run(RouteList routes) {
+		for (int i = 0; i < routes.size(); i++) {
+			insert(routes.getPrefix(i), routes.getLength(i), routes.getHop(i));
+		}
+		
+		sets = new int[numNodes][];
+		
+		/* Pass 1 adds nodes, so sets grows as they are made */
+		computeSets(0, NextHopTable.NO_MATCH);
+		
+		RouteList result = new RouteList(routes.getNextHops());
+		select(0, 0, 0, NextHopTable.NO_MATCH, result);
+		
+		return result;
+	}
+	
+	/****************************************************************
+	 * Adds a route to the 1-bit trie.
+	 ***************************************************************/
+	private void insert(int prefix, int length, int hop) {
+		int node = 0;
+		
+		for (int depth = 0; depth < length; depth++) {
+			boolean bit = (prefix << depth) < 0;
+			int child = bit ? one[node] : zero[node];
+			
+			if (child == 0) {
+				child = newNode(NONE);
+				
+				if (bit) one[node] = child;
+				else zero[node] = child;
+			}
+			
+			node = child;
+		}
+		
+		hops[node] = hop;
+	}
+	
+	/****************************************************************
+	 * Passes 1 and 2: pushes the next hops down to the leaves and
+	 * fills in the set of each node.
+	 *
+	 * @param node the node.
+	 * @param inherited the next hop of the closest ancestor prefix.
+	 * @return the set of the node, sorted.
+	 ***************************************************************/
+	private int[] computeSets(int node, int inherited) {
+		int hop = hops[node] != NONE ? hops[node] : inherited;
+		int[] set;
+		
+		if (zero[node] == 0 && one[node] == 0) {
+			set = hop == NextHopTable.NO_MATCH ? NO_MATCH_SET : new int[] {hop};
+		} else {
+			/* newNode() may replace the arrays, so it runs first */
+			if (zero[node] == 0) {
+				int child = newNode(NONE);
+				zero[node] = child;
+			}
+			
+			if (one[node] == 0) {
+				int child = newNode(NONE);
+				one[node] = child;
+			}
+			
+			int[] left = computeSets(zero[node], hop);
+			int[] right = computeSets(one[node], hop);
+			
+			if (left == NO_MATCH_SET || right == NO_MATCH_SET) {
+				set = NO_MATCH_SET;
+			} else {
+				set = intersect(left, right);
+				if (set.length == 0) set = union(left, right);
+			}
+		}
+		
+		if (node >= sets.length) sets = Arrays.copyOf(sets, zero.length);
+		sets[node] = set;
+		
+		return set;
+	}
+	
+	/****************************************************************
+	 * Pass 3: adds a route for every node whose set does not hold
+	 * the next hop it inherits.
+	 *
+	 * @param node the node.
+	 * @param prefix the node's prefix, left aligned.
+	 * @param depth the number of bits in the prefix.
+	 * @param inherited the next hop of the closest route chosen above.
+	 * @param result receives the routes.
+	 ***************************************************************/
+	private void select(int node, int prefix, int depth, int inherited,
+			RouteList result) {
+		
+		int[] set = sets[node];
+		int hop = inherited;
+		
+		if (Arrays.binarySearch(set, inherited) < 0) {
+			hop = set[0];
+			result.add(prefix, depth, hop);
+		}
+		
+		if (zero[node] == 0) return;
+		
+		select(zero[node], prefix, depth + 1, hop, result);
+		select(one[node], prefix | (Integer.MIN_VALUE >>> depth), depth + 1,
+				hop, result);
+	}
+	
+	private int newNode(int hop) {
+		if (numNodes == zero.length) {
+			zero = Arrays.copyOf(zero, numNodes * 2);
+			one = Arrays.copyOf(one, numNodes * 2);
+			hops = Arrays.copyOf(hops, numNodes * 2);
+		}
+		
+		hops[numNodes] = hop;
+		
+		return numNodes++;
+	}
+	
+	private static int[] intersect(int[] a, int[] b) {
+		int[] out = new int[Math.min(a.length, b.length)];
+		int n = 0;
+		
+		for (int i = 0, j = 0; i < a.length && j < b.length; ) {
+			if (a[i] < b[j]) i++;
+			else if (a[i] > b[j]) j++;
+			else {
+				out[n++] = a[i];
+				i++;
+				j++;
+			}
+		}
+		
+		return n == out.length ? out : Arrays.copyOf(out, n);
+	}
+	
+	private static int[] union(int[] a, int[] b) {
+		int[] out = new int[a.length + b.length];
+		int n = 0;
+		int i = 0;
+		int j = 0;
+		
+		while (i < a.length || j < b.length) {
+			if (j == b.length || (i < a.length && a[i] < b[j])) out[n++] = a[i++];
+			else if (i == a.length || b[j] < a[i]) out[n++] = b[j++];
+			else {
+				out[n++] = a[i++];
+				j++;
+			}
+		}
+		
+		return n == out.length ? out : Arrays.copyOf(out, n);
+	}
+}
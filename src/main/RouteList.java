@@ -0,0 +1,95 @@
+package main;
+
+import java.util.Arrays;
+
+/********************************************************************
+ * A growable list of IPv4 routes held in parallel int arrays, so a
+ * whole routing table can be handed to Trie.addAll() at once.
+ * Prefixes are left aligned and next hops are indices into the
+ * list's own NextHopTable.
+ *
+ * @author agent
+ * @version Oct 17, 2026
+ *******************************************************************/
+public class RouteList {
+	
+	private int[] prefixes;
+	private int[] lengths;
+	private int[] hops;
+	
+	private int size;
+	
+	private NextHopTable nextHops;
+	
+	public RouteList() {
+		this(new NextHopTable());
+	}
+	
+	/****************************************************************
+	 * @param nextHops the table the next hop indices refer to, such
+	 *        as the one a RoutesParser interns into.
+	 ***************************************************************/
+	public RouteList(NextHopTable nextHops) {
+		prefixes = new int[1024];
+		lengths = new int[1024];
+		hops = new int[1024];
+		
+		this.nextHops = nextHops;
+	}
+	
+	/****************************************************************
+	 * Appends a route.
+	 *
+	 * @param prefix the prefix, left aligned. Bits past the prefix
+	 *        length are ignored.
+	 * @param length the number of bits in the prefix.
+	 * @param nextHop the IP address of the next hop.
+	 ***************************************************************/
+	public void add(int prefix, int length, String nextHop) {
+		add(prefix, length, nextHops.intern(nextHop));
+	}
+	
+	/****************************************************************
+	 * Appends a route.
+	 *
+	 * @param prefix the prefix, left aligned.
+	 * @param length the number of bits in the prefix.
+	 * @param hop the index of the next hop in getNextHops().
+	 ***************************************************************/
+	public void add(int prefix, int length, int hop) {
+		if (length < 0 || length > 32) {
+			throw new IllegalArgumentException("Invalid prefix length");
+		}
+		
+		if (size == prefixes.length) {
+			prefixes = Arrays.copyOf(prefixes, size * 2);
+			lengths = Arrays.copyOf(lengths, size * 2);
+			hops = Arrays.copyOf(hops, size * 2);
+		}
+		
+		prefixes[size] = prefix;
+		lengths[size] = length;
+		hops[size] = hop;
+		size++;
+	}
+	
+	public int size() {
+		return size;
+	}
+	
+	public int getPrefix(int index) {
+		return prefixes[index];
+	}
+	
+	public int getLength(int index) {
+		return lengths[index];
+	}
+	
+	public int getHop(int index) {
+		return hops[index];
+	}
+	
+	NextHopTable getNextHops() {
+		return nextHops;
+	}
+}
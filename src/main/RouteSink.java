@@ -0,0 +1,31 @@
+package main;
+
+/********************************************************************
+ * Receives the routes chosen by a RoutesParser. Next hops are
+ * indices into the parser's NextHopTable.
+ *
+ * @author agent
+ * @version Oct 17, 2026
+ *******************************************************************/
+public interface RouteSink {
+	
+	/****************************************************************
+	 * Receives an IPv4 route.
+	 *
+	 * @param prefix the IP address of the prefix, left aligned. Bits
+	 *        past the prefix length are as written in the file.
+	 * @param prefixLength the number of bits in the prefix.
+	 * @param hop the index of the next hop.
+	 ***************************************************************/
+	void addRoute(int prefix, int prefixLength, int hop);
+	
+	/****************************************************************
+	 * Receives an IPv6 route.
+	 *
+	 * @param hi the first 64 bits of the prefix.
+	 * @param lo the last 64 bits of the prefix.
+	 * @param prefixLength the number of bits in the prefix.
+	 * @param hop the index of the next hop.
+	 ***************************************************************/
+	void addRoute6(long hi, long lo, int prefixLength, int hop);
+}
@@ -1,9 +1,12 @@
 package main;
 
-import java.io.BufferedReader;
+import java.io.File;
 import java.io.FileNotFoundException;
-import java.io.FileReader;
 import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
 import java.util.Scanner;
 
 /********************************************************************
@@ -17,107 +20,447 @@ import java.util.Scanner;
  *******************************************************************/
 public class Router {
 	
-	private BufferedReader routesReader;
+	/** Number of results kept by the ":cached" build mode */
+	private static final int CACHE_SIZE = 1 << 16;
 	
-	private BufferedReader ipListReader;
+	/** Number of levels of the "auto" engine */
+	private static final int AUTO_LEVELS = 3;
 	
-	private Trie trie;
+	private String routesFile;
+	
+	private String ipListFile;
+	
+	private RoutingTable table;
+	
+	/** Holds the IPv6 routes */
+	private Trie6 table6;
+	
+	/** Next hops of both tables and the routes parser, so each is
+	 *  interned once and routes are added by index */
+	private NextHopTable nextHops;
+	
+	/** How the trie is built or compiled once populated, if at all. */
+	private String buildMode;
+	
+	/** Levels of the schedule StrideOptimizer picks for the routes,
+	 *  0 if the engine has a fixed schedule */
+	private int autoLevels;
+	
+	/** The schedule StrideOptimizer picked, null if none yet */
+	private int[] optimizedStrides;
+	
+	/** Whether the IPv4 routes are aggregated before being added */
+	private boolean aggregate;
+	
+	/* The number of IPv4 routes before and after aggregating */
+	private int routesBefore;
+	private int routesAfter;
 	
 	public Router(int strideLength) {
-		trie = new Trie(strideLength);
+		this(new Trie(strideLength));
+	}
+	
+	public Router(RoutingTable table) {
+		this.table = table;
+		
+		nextHops = table.getNextHops();
+		table6 = new Trie6(nextHops);
+	}
+	
+	/****************************************************************
+	 * Creates a router for the named engine, see createTable(), or
+	 * "auto" for a Trie of three levels whose strides StrideOptimizer
+	 * picks for the routes populating it, "auto-4" for four levels 
+	 * and so on. A Trie engine may be followed by ":frozen" or ":compressed" 
+	 * to compile the trie that way once it is populated, by 
+	 * ":parallel" to build it on every core, or by ":cached" to put a
+	 * LookupCache in front of it. Any engine may also be followed by
+	 * ":aggregated" to add the fewest equivalent routes, see 
+	 * RouteAggregator. Fewer routes need not mean a smaller table:
+	 * aggregating can replace long prefixes with shorter ones, which
+	 * a stride-expanded Trie copies into more nodes.
+	 * 
+	 * @param engine the engine, such as "16-8-8:compressed".
+	 * @throws IllegalArgumentException if the engine is unknown.
+	 ***************************************************************/
+	public Router(String engine) {
+		String[] parts = engine.split(":");
+		
+		nextHops = new NextHopTable();
+		table6 = new Trie6(nextHops);
+		
+		if (parts[0].startsWith("auto")) {
+			autoLevels = parseAutoLevels(parts[0]);
+			
+			/* Replaced by the optimized schedule once the routes are in */
+			table = new Trie(Trie.uniformStrides(8), nextHops);
+		} else {
+			table = createTable(parts[0], nextHops);
+		}
+		
+		for (int i = 1; i < parts.length; i++) {
+			if (parts[i].equals("aggregated") && !aggregate) {
+				aggregate = true;
+				continue;
+			}
+			
+			if (buildMode != null || !(table instanceof Trie) 
+					|| (!parts[i].equals("frozen") 
+					&& !parts[i].equals("compressed") 
+					&& !parts[i].equals("parallel")
+					&& !parts[i].equals("cached"))) {
+				throw new IllegalArgumentException("Unknown engine: " + engine);
+			}
+			
+			buildMode = parts[i];
+		}
+	}
+	
+	/****************************************************************
+	 * @param engine "auto" or "auto-" and a number of levels.
+	 * @return the number of levels.
+	 * @throws IllegalArgumentException if the engine is invalid.
+	 ***************************************************************/
+	private static int parseAutoLevels(String engine) {
+		if (engine.equals("auto")) return AUTO_LEVELS;
+		
+		try {
+			if (engine.startsWith("auto-")) {
+				int levels = Integer.parseInt(engine.substring(5));
+				
+				if (levels >= 2 && levels <= 32) return levels;
+			}
+		} catch (NumberFormatException e) {
+		}
+		
+		throw new IllegalArgumentException("Unknown engine: " + engine);
+	}
+	
+	/****************************************************************
+	 * Creates an empty routing table for the named engine.
+	 * 
+	 * @param engine a stride length or stride schedule such as 
+	 *        "16-8-8" for a Trie, "dir24-8", "poptrie", "range", 
+	 *        "lengths" for binary search on prefix lengths or "bloom"
+	 *        for Bloom filters per prefix length.
+	 * @return the new table.
+	 * @throws IllegalArgumentException if the engine is unknown.
+	 ***************************************************************/
+	public static RoutingTable createTable(String engine) {
+		return createTable(engine, new NextHopTable());
+	}
+	
+	/****************************************************************
+	 * Creates an empty routing table for the named engine, see 
+	 * createTable(String), keeping its next hops in the given table.
+	 * 
+	 * @param engine the engine.
+	 * @param nextHops the table interning the next hops.
+	 * @return the new table.
+	 * @throws IllegalArgumentException if the engine is unknown.
+	 ***************************************************************/
+	public static RoutingTable createTable(String engine, 
+			NextHopTable nextHops) {
+		
+		if (engine.equalsIgnoreCase("dir24-8")) return new Dir24Table(nextHops);
+		if (engine.equalsIgnoreCase("poptrie")) return new PopTrie(nextHops);
+		if (engine.equalsIgnoreCase("range")) return new RangeTable(nextHops);
+		
+		if (engine.equalsIgnoreCase("lengths")) {
+			return new LengthSearchTable(nextHops);
+		}
+		
+		if (engine.equalsIgnoreCase("bloom")) return new BloomFilterTable(nextHops);
+		
+		try {
+			return new Trie(Trie.parseStrides(engine), nextHops);
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Unknown engine: " + engine);
+		}
 	}
 
 	public void setRoutesFile(String path) throws FileNotFoundException {
-		routesReader = new BufferedReader(new FileReader(path));
+		if (!new File(path).isFile()) throw new FileNotFoundException(path);
+		
+		routesFile = path;
 	}
 	
 	public void setIpListFile(String path) throws FileNotFoundException {
-		ipListReader = new BufferedReader(new FileReader(path));
+		if (!new File(path).isFile()) throw new FileNotFoundException(path);
+		
+		ipListFile = path;
 	}
 	
+	/****************************************************************
+	 * Adds the routes file to the tables, keeping the route with the
+	 * shortest AS path of each prefix, see RoutesParser.
+	 * 
+	 * @throws IOException if the file cannot be read or is invalid.
+	 ***************************************************************/
 	public void populateTrie() throws IOException {
-		String line = routesReader.readLine();
 		
-		/* Reads the routes file line-by-line */
-		while (line != null) {
-			String[] pipes = line.split("\\|");
+		/* Publishes the whole table at once rather than per route */
+		if (table instanceof Trie) ((Trie) table).beginUpdate();
+		
+		/* Collects the IPv4 routes for Trie.addAll(), aggregating or
+		 * optimizing the strides */
+		final RouteList routes;
+		if ("parallel".equals(buildMode) || aggregate || autoLevels > 0) {
+			routes = new RouteList(nextHops);
+		}
+		else routes = null;
+		
+		/* The parser interns into the tables' own next hops */
+		new RoutesParser(nextHops).parse(routesFile, new RouteSink() {
 			
-			if (pipes.length != 3) {
-				System.out.println(pipes.length);
-				throw new IOException("Invalid Routes File");
+			public void addRoute(int prefix, int prefixLength, int hop) {
+				if (routes != null) routes.add(prefix, prefixLength, hop);
+				else table.add(prefix, prefixLength, hop);
 			}
 			
-			String currentPrefix = pipes[0];
-			
-			String shortestPrefix = pipes[0];
-			String shortestHop = pipes[2];
+			public void addRoute6(long hi, long lo, int prefixLength, 
+					int hop) {
+				table6.add(hi, lo, prefixLength, hop);
+			}
+		});
+		
+		if (routes != null) addRoutes(routes);
+		
+		finishBuild();
+	}
+	
+	/****************************************************************
+	 * Adds a list of IPv4 routes to the table the way populateTrie()
+	 * adds the routes file, build mode included.
+	 * 
+	 * @param routes the routes to add.
+	 ***************************************************************/
+	public void populateTrie(RouteList routes) {
+		if (table instanceof Trie) ((Trie) table).beginUpdate();
+		
+		addRoutes(routes);
+		finishBuild();
+	}
+	
+	/****************************************************************
+	 * Adds a list of IPv4 routes to the table, aggregating them first
+	 * if the engine asks. An "auto" engine's Trie is replaced by one
+	 * with the strides picked for the routes, if it is still empty.
+	 ***************************************************************/
+	private void addRoutes(RouteList routes) {
+		if (aggregate) {
+			routesBefore = routes.size();
+			routes = RouteAggregator.aggregate(routes);
+			routesAfter = routes.size();
+		}
+		
+		if (autoLevels > 0 && table instanceof Trie 
+				&& table.getNumPrefixes() == 0) {
+			optimizedStrides = StrideOptimizer.optimize(routes, autoLevels);
 			
-			// Number of the current line's path length
-			int shortestPath = pipes[1].split(" ").length;
+			table = new Trie(optimizedStrides, nextHops);
+			((Trie) table).beginUpdate();
+		}
+		
+		if ("parallel".equals(buildMode)) {
+			((Trie) table).addAll(routes);
+		} else {
+			NextHopTable hops = routes.getNextHops();
 			
-			/* Loops through alike prefixes */
-			while ((line = routesReader.readLine()) != null) {
-				pipes = line.split("\\|");
+			for (int i = 0; i < routes.size(); i++) {
+				int hop = routes.getHop(i);
 				
-				if (!currentPrefix.equals(pipes[0])) break;
-				
-				int currentPath = pipes[1].split(" ").length;
-				
-				/* Checks for a new shortest path */
-				if (currentPath < shortestPath) {
-					shortestPrefix = pipes[0];
-					shortestHop = pipes[2];
-					
-					shortestPath = currentPath;
-					
-					/* Aborts early when path of length 1 or less found. */
-					if (shortestPath <= 1) {
-						break;
-					}
+				if (hops == nextHops) {
+					table.add(routes.getPrefix(i), routes.getLength(i), hop);
+				} else {
+					table.add(routes.getPrefix(i), routes.getLength(i), 
+							hops.get(hop));
 				}
 			}
-			
-			String[] prefixArr = shortestPrefix.split("/");
-			
-			String prefix = prefixArr[0];
-			int prefixLength = Integer.parseInt(prefixArr[1]);
-			
-			trie.add(prefix, prefixLength, shortestHop);
 		}
+	}
+	
+	/****************************************************************
+	 * Publishes the routes added to a Trie and compiles or caches it
+	 * as the build mode asks.
+	 ***************************************************************/
+	private void finishBuild() {
+		if (table instanceof Trie) ((Trie) table).commitUpdate();
 		
-		routesReader.close();
+		if ("frozen".equals(buildMode)) freezeTrie();
+		if ("compressed".equals(buildMode)) compressTrie();
 		
+		if ("cached".equals(buildMode) && table instanceof Trie) {
+			table = new LookupCache((Trie) table, CACHE_SIZE);
+		}
 	}
 	
+	/****************************************************************
+	 * Compiles the populated trie into a FrozenTrie which is used
+	 * by every following lookup.
+	 ***************************************************************/
+	public void freezeTrie() {
+		if (!(table instanceof Trie)) {
+			throw new IllegalStateException("Only a Trie can be frozen");
+		}
+		
+		table = ((Trie) table).freeze();
+	}
+	
+	/****************************************************************
+	 * Compiles the populated trie into a leaf-pushed, path 
+	 * compressed CompressedTrie which is used by every following 
+	 * lookup.
+	 ***************************************************************/
+	public void compressTrie() {
+		if (!(table instanceof Trie)) {
+			throw new IllegalStateException("Only a Trie can be compressed");
+		}
+		
+		table = ((Trie) table).compress();
+	}
+	
+	/****************************************************************
+	 * Writes the frozen trie to an image file for loadTrieImage().
+	 * 
+	 * @param path the file to write.
+	 * @throws IOException if the file cannot be written.
+	 ***************************************************************/
+	public void saveTrieImage(String path) throws IOException {
+		if (!(table instanceof FrozenTrie)) freezeTrie();
+		
+		((FrozenTrie) table).save(path);
+	}
+	
+	/****************************************************************
+	 * Maps a trie image written by saveTrieImage() and uses it for 
+	 * every following lookup, in place of populating the trie.
+	 * 
+	 * @param path the image file.
+	 * @throws IOException if the image cannot be read.
+	 ***************************************************************/
+	public void loadTrieImage(String path) throws IOException {
+		table = FrozenTrie.load(path);
+	}
+	
+	/****************************************************************
+	 * Looks up every address of the IP list file, printing the next
+	 * hop of each to System.out.
+	 * 
+	 * @throws IOException if the file cannot be read.
+	 ***************************************************************/
 	public void lookupIPs() throws IOException {
-		String line;
+		lookupIPs(Channels.newChannel(System.out));
+	}
+	
+	/****************************************************************
+	 * Looks up every address of the IP list file, see LookupStream.
+	 * 
+	 * @param results receives a line with the next hop of each.
+	 * @throws IOException if reading or writing fails.
+	 ***************************************************************/
+	public void lookupIPs(WritableByteChannel results) throws IOException {
+		RandomAccessFile file = new RandomAccessFile(ipListFile, "r");
 		
-		/* Reads the routes file line-by-line */
-		while ((line = ipListReader.readLine()) != null) {
-			String result = trie.lookUp(line);
-			
-			String output = String.format("%-15s %s", line, result);
-			
-			System.out.println(output);
-//			System.out.println(line + "\t" + result); // use this for str cmpr
+		try {
+			new LookupStream(table, table6).lookUp(file.getChannel(), results);
+		} finally {
+			file.close();
+		}
+	}
+	
+	/****************************************************************
+	 * Looks up every address of the IP list file on several threads,
+	 * see PipelinedLookup. The results are in the same order.
+	 * 
+	 * @param results receives a line with the next hop of each.
+	 * @param threads the number of lookup threads.
+	 * @param queueDepth the number of chunks of the list that may be
+	 *        read but not yet written.
+	 * @throws IOException if reading or writing fails.
+	 ***************************************************************/
+	public void lookupIPs(WritableByteChannel results, int threads, 
+			int queueDepth) throws IOException {
+		
+		RandomAccessFile file = new RandomAccessFile(ipListFile, "r");
+		
+		try {
+			new PipelinedLookup(table, table6, threads, queueDepth)
+					.lookUp(file.getChannel(), results);
+		} finally {
+			file.close();
 		}
 	}
 	
+	RoutingTable getTable() {
+		return table;
+	}
+	
 	public int getNumNodes() {
-		return trie.getNumNodes();
+		return table.getNumNodes();
 	}
 	
 	public int getNumPrefixes() {
-		return trie.getNumPrefixes();
+		return table.getNumPrefixes();
+	}
+	
+	/****************************************************************
+	 * @return the strides StrideOptimizer picked for an "auto" 
+	 *         engine, or null.
+	 ***************************************************************/
+	public int[] getOptimizedStrides() {
+		return optimizedStrides == null ? null : optimizedStrides.clone();
+	}
+	
+	public boolean isAggregated() {
+		return aggregate;
+	}
+	
+	/****************************************************************
+	 * @return the number of IPv4 routes given to the last populate, 
+	 *         if the engine aggregates them.
+	 ***************************************************************/
+	public int getNumRoutesBeforeAggregation() {
+		return routesBefore;
+	}
+	
+	/****************************************************************
+	 * @return the number of IPv4 routes the last populate added, if 
+	 *         the engine aggregates them.
+	 ***************************************************************/
+	public int getNumRoutesAfterAggregation() {
+		return routesAfter;
+	}
+	
+	/****************************************************************
+	 * @return the memory of the IPv4 table, with the IPv6 table as 
+	 *         a part if it holds any routes. Shared next hops are
+	 *         counted once.
+	 ***************************************************************/
+	public MemoryReport getMemoryReport() {
+		MemoryReport report = table.getMemoryReport();
+		
+		if (table6.getNumPrefixes() > 0) {
+			long bytes = table6.getMemoryReport().getTotalBytes();
+			
+			if (table6.getNextHops() == table.getNextHops()) {
+				bytes -= MemoryReport.nextHopBytes(table6.getNextHops());
+			}
+			report.addPart("IPv6 table", bytes);
+		}
+		
+		return report;
 	}
 	
 	public static void main(String[] args) {
 		Scanner scan = new Scanner(System.in);		
 		
-		System.out.print("Enter stride length: ");
-		int strideLength = Integer.parseInt(scan.nextLine());
-		
-		Router router = new Router(strideLength);
+		System.out.println("Enter the engine: a stride length, a schedule "
+				+ "(16-8-8), auto[-N], dir24-8, poptrie, range, lengths or bloom.");
+		System.out.println("A Trie engine may end in :frozen, :compressed, "
+				+ ":parallel or :cached, and any engine in :aggregated.");
+		System.out.print("\t> ");
+		Router router = new Router(scan.nextLine().trim());
 		
 		
 		System.out.println("\nInput router file path:");
@@ -158,13 +501,19 @@ public class Router {
 			System.out.println("Done");
 			System.out.println("Elapsed time: " + elapsed + "ms");
 			
-			System.gc();
+			if (router.getOptimizedStrides() != null) {
+				System.out.println("Stride schedule: " 
+						+ Arrays.toString(router.getOptimizedStrides()));
+			}
 			
-			int memUsage = (int) (Runtime.getRuntime().totalMemory() - 
-					Runtime.getRuntime().freeMemory());
-			memUsage /= 1048576; //2^20 bits
+			if (router.isAggregated()) {
+				System.out.println("Aggregated " 
+						+ router.getNumRoutesBeforeAggregation() + " routes to "
+						+ router.getNumRoutesAfterAggregation());
+			}
 			
-			System.out.println("Memory usage: " + memUsage + "Mb");
+			System.out.println();
+			System.out.print(router.getMemoryReport());
 			
 		} catch (IOException e) {
 			e.printStackTrace();
@@ -0,0 +1,409 @@
+package main;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/********************************************************************
+ * Reads a routes file of lines such as
+ *   1.2.3.0/24|3356 174 2914|10.0.0.1
+ * by scanning the bytes of the memory mapped file. No String is
+ * built except for a next hop the first time it is seen.
+ *
+ * Consecutive lines for the same prefix form a group and only the
+ * route with the shortest AS path in it, the first of equals, is
+ * passed on. The AS path length is counted the way
+ * String.split(" ") counts, so repeated spaces count as empty hops.
+ *
+ * @author agent
+ * @version Oct 17, 2026
+ *******************************************************************/
+public class RoutesParser {
+	
+	/** Receives the next hops, referenced by the routes passed on */
+	private NextHopTable nextHops;
+	
+	/** Open addressing table of entry + 1, 0 for an empty slot */
+	private int[] slots;
+	
+	/* The bytes, hash and NextHopTable index of each next hop seen */
+	private byte[][] entryBytes;
+	private int[] entryHash;
+	private int[] entryHop;
+	private int numEntries;
+	
+	/** The groups of the last IPv6 address parsed */
+	private int[] groups = new int[8];
+	
+	/** The bits of the last IPv6 address parsed */
+	private long[] bits6 = new long[2];
+	
+	/****************************************************************
+	 * @param nextHops the table the next hops are interned into.
+	 ***************************************************************/
+	public RoutesParser(NextHopTable nextHops) {
+		this.nextHops = nextHops;
+		
+		slots = new int[256];
+		
+		entryBytes = new byte[64][];
+		entryHash = new int[64];
+		entryHop = new int[64];
+	}
+	
+	/****************************************************************
+	 * Parses a routes file, passing the chosen route of each group
+	 * to the sink in file order.
+	 *
+	 * @param path the routes file.
+	 * @param sink receives the routes.
+	 * @throws IOException if the file cannot be read or a line is
+	 *         not prefix|AS path|next hop.
+	 ***************************************************************/
+	public void parse(String path, RouteSink sink) throws IOException {
+		RandomAccessFile file = new RandomAccessFile(path, "r");
+		ByteBuffer routes;
+		
+		try {
+			FileChannel channel = file.getChannel();
+			
+			if (channel.size() > Integer.MAX_VALUE) {
+				throw new IOException("Routes file too large: " + path);
+			}
+			
+			routes = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+					channel.size());
+		} finally {
+			file.close();
+		}
+		
+		parse(routes, sink);
+	}
+	
+	/****************************************************************
+	 * Parses the routes between the buffer's position and limit.
+	 *
+	 * @param routes the contents of a routes file.
+	 * @param sink receives the routes.
+	 * @throws IOException if a line is not prefix|AS path|next hop.
+	 ***************************************************************/
+	public void parse(ByteBuffer routes, RouteSink sink) throws IOException {
+		int limit = routes.limit();
+		int pos = routes.position();
+		
+		/* The prefix of the group and its best route so far */
+		int groupStart = -1;
+		int groupLength = 0;
+		int bestPath = 0;
+		int bestHop = 0;
+		int bestHopEnd = 0;
+		
+		while (pos < limit) {
+			int end = indexOf(routes, '\n', pos, limit);
+			if (end < 0) end = limit;
+			
+			int next = end + 1;
+			if (end > pos && routes.get(end - 1) == '\r') end--;
+			
+			int pipe1 = indexOf(routes, '|', pos, end);
+			int pipe2 = pipe1 < 0 ? -1 : indexOf(routes, '|', pipe1 + 1, end);
+			
+			if (pipe2 < 0 || pipe2 + 1 == end
+					|| indexOf(routes, '|', pipe2 + 1, end) >= 0) {
+				throw new IOException("Invalid Routes File");
+			}
+			
+			int path = pathLength(routes, pipe1 + 1, pipe2);
+			
+			if (groupStart >= 0 && pipe1 - pos == groupLength
+					&& equal(routes, groupStart, pos, groupLength)) {
+				
+				/* Checks for a new shortest path */
+				if (path < bestPath) {
+					bestPath = path;
+					bestHop = pipe2 + 1;
+					bestHopEnd = end;
+				}
+			} else {
+				if (groupStart >= 0) {
+					addRoute(routes, groupStart, groupStart + groupLength,
+							intern(routes, bestHop, bestHopEnd), sink);
+				}
+				
+				groupStart = pos;
+				groupLength = pipe1 - pos;
+				bestPath = path;
+				bestHop = pipe2 + 1;
+				bestHopEnd = end;
+			}
+			
+			pos = next;
+		}
+		
+		if (groupStart >= 0) {
+			addRoute(routes, groupStart, groupStart + groupLength,
+					intern(routes, bestHop, bestHopEnd), sink);
+		}
+	}
+	
+	/****************************************************************
+	 * Parses a prefix such as 1.2.3.0/24 or 2001:db8::/32 and
+	 * passes its route to the sink.
+	 ***************************************************************/
+	private void addRoute(ByteBuffer routes, int start, int end, int hop,
+			RouteSink sink) {
+		
+		int slash = indexOf(routes, '/', start, end);
+		if (slash < 0) throw new IllegalArgumentException("Invalid prefix");
+		
+		int length = parseDecimal(routes, slash + 1, end);
+		
+		if (indexOf(routes, ':', start, slash) >= 0) {
+			parseIPv6(routes, start, slash);
+			sink.addRoute6(bits6[0], bits6[1], length, hop);
+		} else {
+			sink.addRoute(parseIPv4(routes, start, slash), length, hop);
+		}
+	}
+	
+	/****************************************************************
+	 * Finds the index of the next hop in the given bytes, interning
+	 * it if it has not been seen before.
+	 ***************************************************************/
+	private int intern(ByteBuffer routes, int start, int end) {
+		int hash = 0x811C9DC5;
+		
+		for (int i = start; i < end; i++) {
+			hash = (hash ^ routes.get(i)) * 0x01000193;
+		}
+		
+		int mask = slots.length - 1;
+		int slot = hash & mask;
+		
+		while (slots[slot] != 0) {
+			int entry = slots[slot] - 1;
+			byte[] bytes = entryBytes[entry];
+			
+			if (entryHash[entry] == hash && bytes.length == end - start) {
+				int i = 0;
+				while (i < bytes.length && bytes[i] == routes.get(start + i)) i++;
+				
+				if (i == bytes.length) return entryHop[entry];
+			}
+			
+			slot = (slot + 1) & mask;
+		}
+		
+		byte[] bytes = new byte[end - start];
+		for (int i = 0; i < bytes.length; i++) bytes[i] = routes.get(start + i);
+		
+		int hop = nextHops.intern(new String(bytes, StandardCharsets.ISO_8859_1));
+		
+		if (numEntries == entryHop.length) {
+			entryBytes = Arrays.copyOf(entryBytes, numEntries * 2);
+			entryHash = Arrays.copyOf(entryHash, numEntries * 2);
+			entryHop = Arrays.copyOf(entryHop, numEntries * 2);
+		}
+		
+		entryBytes[numEntries] = bytes;
+		entryHash[numEntries] = hash;
+		entryHop[numEntries] = hop;
+		slots[slot] = ++numEntries;
+		
+		/* Keeps the table at most half full */
+		if (numEntries * 2 > slots.length) rehash();
+		
+		return hop;
+	}
+	
+	private void rehash() {
+		slots = new int[slots.length * 2];
+		int mask = slots.length - 1;
+		
+		for (int entry = 0; entry < numEntries; entry++) {
+			int slot = entryHash[entry] & mask;
+			while (slots[slot] != 0) slot = (slot + 1) & mask;
+			
+			slots[slot] = entry + 1;
+		}
+	}
+	
+	/****************************************************************
+	 * Counts the AS path's hops as path.split(" ").length would.
+	 ***************************************************************/
+	private static int pathLength(ByteBuffer routes, int start, int end) {
+		if (start == end) return 1;
+		
+		int spaces = 0;
+		for (int i = start; i < end; i++) {
+			if (routes.get(i) == ' ') spaces++;
+		}
+		
+		/* Trailing empty hops are dropped */
+		int trailing = 0;
+		while (trailing < end - start && routes.get(end - 1 - trailing) == ' ') {
+			trailing++;
+		}
+		
+		if (trailing == end - start) return 0;
+		
+		return spaces + 1 - trailing;
+	}
+	
+	/****************************************************************
+	 * @return the index of the first b in [start, end), or -1.
+	 ***************************************************************/
+	private static int indexOf(ByteBuffer bytes, char b, int start, int end) {
+		for (int i = start; i < end; i++) {
+			if (bytes.get(i) == b) return i;
+		}
+		
+		return -1;
+	}
+	
+	private static boolean equal(ByteBuffer bytes, int a, int b, int length) {
+		for (int i = 0; i < length; i++) {
+			if (bytes.get(a + i) != bytes.get(b + i)) return false;
+		}
+		
+		return true;
+	}
+	
+	/****************************************************************
+	 * Parses an unsigned decimal number.
+	 *
+	 * @throws NumberFormatException if there are no digits or
+	 *         something else.
+	 ***************************************************************/
+	static int parseDecimal(ByteBuffer bytes, int start, int end) {
+		if (start == end || end - start > 9) {
+			throw new NumberFormatException("Invalid number");
+		}
+		
+		int value = 0;
+		
+		for (int i = start; i < end; i++) {
+			int digit = bytes.get(i) - '0';
+			
+			if (digit < 0 || digit > 9) {
+				throw new NumberFormatException("Invalid number");
+			}
+			value = value * 10 + digit;
+		}
+		
+		return value;
+	}
+	
+	/****************************************************************
+	 * Parses an IPv4 address in dotted decimal, the same as
+	 * Trie.convertIPtoInt(ipAddr, 32).
+	 *
+	 * @param bytes holds the address.
+	 * @param start the index of its first byte.
+	 * @param end the index past its last byte.
+	 * @return the bits of the address.
+	 * @throws NumberFormatException if the address is invalid.
+	 ***************************************************************/
+	static int parseIPv4(ByteBuffer bytes, int start, int end) {
+		int data = 0;
+		
+		for (int part = 0; part < 4; part++) {
+			int dot = part < 3 ? indexOf(bytes, '.', start, end) : end;
+			if (dot < 0) throw new NumberFormatException("Invalid IPv4");
+			
+			data = (data << 8) | (parseDecimal(bytes, start, dot) & 0xFF);
+			start = dot + 1;
+		}
+		
+		return data;
+	}
+	
+	/****************************************************************
+	 * Parses an IPv6 address into bits6, the same as
+	 * Trie6.parseIPv6().
+	 *
+	 * @throws IllegalArgumentException if the address is invalid.
+	 ***************************************************************/
+	private void parseIPv6(ByteBuffer bytes, int start, int end) {
+		int count = 0;
+		int gap = -1;
+		int i = start;
+		
+		if (end - start >= 2 && bytes.get(start) == ':'
+				&& bytes.get(start + 1) == ':') {
+			gap = 0;
+			i = start + 2;
+		}
+		
+		while (i < end && count < 8) {
+			int groupEnd = i;
+			boolean dotted = false;
+			
+			while (groupEnd < end && bytes.get(groupEnd) != ':') {
+				if (bytes.get(groupEnd) == '.') dotted = true;
+				groupEnd++;
+			}
+			
+			if (dotted) {
+				if (count > 6) throw new IllegalArgumentException("Invalid IPv6");
+				
+				/* Embedded IPv4 address in the last 32 bits */
+				int ipv4 = parseIPv4(bytes, i, groupEnd);
+				groups[count++] = ipv4 >>> 16;
+				groups[count++] = ipv4 & 0xFFFF;
+				i = groupEnd;
+				break;
+			}
+			
+			if (groupEnd == i || groupEnd - i > 4) {
+				throw new IllegalArgumentException("Invalid IPv6");
+			}
+			
+			groups[count++] = parseHex(bytes, i, groupEnd);
+			
+			i = groupEnd + 1;
+			
+			if (groupEnd + 1 < end && bytes.get(groupEnd + 1) == ':') {
+				if (gap >= 0) throw new IllegalArgumentException("Invalid IPv6");
+				
+				gap = count;
+				i = groupEnd + 2;
+			}
+		}
+		
+		if (i < end || (gap < 0 && count != 8)) {
+			throw new IllegalArgumentException("Invalid IPv6");
+		}
+		
+		/* Moves the groups after "::" to the end */
+		if (gap >= 0) {
+			int moved = count - gap;
+			System.arraycopy(groups, gap, groups, 8 - moved, moved);
+			for (int j = gap; j < 8 - moved; j++) groups[j] = 0;
+		}
+		
+		bits6[0] = 0;
+		bits6[1] = 0;
+		
+		for (int j = 0; j < 4; j++) {
+			bits6[0] = (bits6[0] << 16) | groups[j];
+			bits6[1] = (bits6[1] << 16) | groups[j + 4];
+		}
+	}
+	
+	private static int parseHex(ByteBuffer bytes, int start, int end) {
+		int value = 0;
+		
+		for (int i = start; i < end; i++) {
+			int digit = Character.digit(bytes.get(i), 16);
+			if (digit < 0) throw new IllegalArgumentException("Invalid IPv6");
+			
+			value = (value << 4) | digit;
+		}
+		
+		return value;
+	}
+}
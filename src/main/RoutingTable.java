@@ -0,0 +1,81 @@
+package main;
+
+/********************************************************************
+ * A longest prefix match lookup structure for IPv4 routes. Trie is
+ * the reference implementation; the others trade build time or
+ * flexibility for faster lookups or less memory.
+ *
+ * @author agent
+ * @version Oct 17, 2026
+ *******************************************************************/
+public interface RoutingTable {
+	
+	/****************************************************************
+	 * Adds a prefix into the table.
+	 *
+	 * @param prefix the IP address of the prefix.
+	 * @param prefixLength the number of bits in the prefix.
+	 * @param nextHop the IP address of the next hop.
+	 ***************************************************************/
+	void add(String prefix, int prefixLength, String nextHop);
+	
+	/****************************************************************
+	 * Adds a prefix into the table.
+	 *
+	 * @param prefix the bits of the prefix, left aligned. Bits past
+	 *        the prefix length are ignored.
+	 * @param prefixLength the number of bits in the prefix.
+	 * @param nextHop the IP address of the next hop.
+	 ***************************************************************/
+	void add(int prefix, int prefixLength, String nextHop);
+	
+	/****************************************************************
+	 * Adds a prefix into the table.
+	 *
+	 * @param prefix the bits of the prefix, left aligned. Bits past
+	 *        the prefix length are ignored.
+	 * @param prefixLength the number of bits in the prefix.
+	 * @param hop the index of the next hop in getNextHops().
+	 ***************************************************************/
+	void add(int prefix, int prefixLength, int hop);
+	
+	/****************************************************************
+	 * Looks up the given IP address and returns the next hop
+	 * associated with it. Returns "NoMatch" if there is no
+	 * matching prefix.
+	 *
+	 * @param ipAddr the IPv4 address to lookup
+	 * @return the next hop associated with the given IP if any.
+	 ***************************************************************/
+	String lookUp(String ipAddr);
+	
+	/****************************************************************
+	 * Looks up the given IP address and returns the index of the
+	 * next hop associated with it, or NextHopTable.NO_MATCH.
+	 *
+	 * @param ipv4 the bits of the IPv4 address to lookup
+	 * @return the index of the next hop, see getNextHop(int).
+	 ***************************************************************/
+	int lookUp(int ipv4);
+	
+	/****************************************************************
+	 * @param index a next hop index returned by lookUp(int).
+	 * @return the next hop IP address, or "NoMatch".
+	 ***************************************************************/
+	String getNextHop(int index);
+	
+	/****************************************************************
+	 * @return the next hops of the table, which may be shared with
+	 *         other tables.
+	 ***************************************************************/
+	NextHopTable getNextHops();
+	
+	int getNumNodes();
+	
+	int getNumPrefixes();
+	
+	/****************************************************************
+	 * @return the memory the table takes, by level and by part.
+	 ***************************************************************/
+	MemoryReport getMemoryReport();
+}
@@ -0,0 +1,172 @@
+package main;
+
+import java.util.Arrays;
+
+/********************************************************************
+ * Picks the stride schedule for a fixed number of Trie levels that
+ * uses the least memory for a given set of prefixes, using the
+ * controlled prefix expansion dynamic program of Srinivasan and
+ * Varghese, weighted by what a Trie actually allocates.
+ *
+ * A level covering bits a to b of the addresses costs, in bytes,
+ *   arrays(a) * arrayBytes(2^(b - a)) + slots(a, b) * NODE_BYTES
+ * where arrays(a) is the number of nodes ending at bit a that have
+ * children, one for the root, and slots(a, b) the number of b bit
+ * strings a Node is made for: those covered by a prefix longer than
+ * a and no longer than b once expanded, or starting a longer one.
+ * The cost of covering bits 0 to b with r levels is then
+ *   T(0, 0) = 0
+ *   T(b, r) = min over a of T(a, r - 1) + level(a, b)
+ *
+ * @author agent
+ * @version Oct 17, 2026
+ *******************************************************************/
+public class StrideOptimizer {
+	
+	/****************************************************************
+	 * Finds the cheapest schedule of the given number of levels for
+	 * a list of routes.
+	 *
+	 * @param routes the routes.
+	 * @param levels the number of levels in the schedule, 2 to 32.
+	 * @return the stride of each level, summing to 32.
+	 ***************************************************************/
+	public static int[] optimize(RouteList routes, int levels) {
+		int count = routes.size();
+		int[] prefixes = new int[count];
+		int[] lengths = new int[count];
+		
+		for (int i = 0; i < count; i++) {
+			prefixes[i] = routes.getPrefix(i);
+			lengths[i] = routes.getLength(i);
+		}
+		
+		return optimize(prefixes, lengths, count, levels);
+	}
+	
+	/****************************************************************
+	 * Finds the cheapest schedule of the given number of levels.
+	 *
+	 * @param prefixes the prefixes, left aligned.
+	 * @param lengths the length of each prefix.
+	 * @param count the number of prefixes to use.
+	 * @param levels the number of levels in the schedule, 2 to 32.
+	 * @return the stride of each level, summing to 32.
+	 ***************************************************************/
+	public static int[] optimize(int[] prefixes, int[] lengths, int count,
+			int levels) {
+		
+		if (levels < 2 || levels > 32) {
+			throw new IllegalArgumentException("Invalid number of levels");
+		}
+		
+		long[][] levelCost = levelCosts(sort(prefixes, lengths, count));
+		
+		long[][] cost = new long[levels + 1][33];
+		int[][] split = new int[levels + 1][33];
+		
+		for (long[] row : cost) Arrays.fill(row, Long.MAX_VALUE);
+		cost[0][0] = 0;
+		
+		for (int r = 1; r <= levels; r++) {
+			for (int b = r; b <= 32; b++) {
+				
+				/* The previous level ends at bit a, this one at b */
+				for (int a = Math.max(r - 1, b - Trie.MAX_STRIDE); a < b; a++) {
+					if (cost[r - 1][a] == Long.MAX_VALUE) continue;
+					
+					long c = cost[r - 1][a] + levelCost[a][b];
+					
+					if (c < cost[r][b]) {
+						cost[r][b] = c;
+						split[r][b] = a;
+					}
+				}
+			}
+		}
+		
+		int[] strides = new int[levels];
+		int end = 32;
+		
+		for (int r = levels; r >= 1; r--) {
+			int a = split[r][end];
+			strides[r - 1] = end - a;
+			end = a;
+		}
+		
+		return strides;
+	}
+	
+	/****************************************************************
+	 * Sorts the prefixes by first address, shorter ones first.
+	 *
+	 * @return the address of each prefix, unsigned, shifted left 6
+	 *         bits past its length.
+	 ***************************************************************/
+	private static long[] sort(int[] prefixes, int[] lengths, int count) {
+		long[] sorted = new long[count];
+		
+		for (int i = 0; i < count; i++) {
+			int length = lengths[i];
+			int prefix = length == 0 ? 0 : prefixes[i] & (-1 << (32 - length));
+			
+			sorted[i] = ((prefix & 0xFFFFFFFFL) << 6) | length;
+		}
+		Arrays.sort(sorted);
+		
+		return sorted;
+	}
+	
+	/****************************************************************
+	 * Works out the bytes of every level the schedule may have, one
+	 * pass over the prefixes for each bit a level may start at.
+	 *
+	 * @param sorted the prefixes, as given by sort().
+	 * @return the cost of the level from bit a to bit b at [a][b].
+	 ***************************************************************/
+	private static long[][] levelCosts(long[] sorted) {
+		long[][] costs = new long[33][33];
+		
+		for (int a = 0; a < 32; a++) {
+			int last = Math.min(32, a + Trie.MAX_STRIDE);
+			
+			/* The root always has its array */
+			long arrays = a == 0 ? 1 : 0;
+			long lastHead = -1;
+			
+			/* For each b, the slots counted so far and the first one
+			 * past them, the prefixes coming in address order */
+			long[] slots = new long[33];
+			long[] covered = new long[33];
+			
+			for (long entry : sorted) {
+				int length = (int) (entry & 0x3F);
+				if (length <= a) continue;
+				
+				long address = entry >>> 6;
+				
+				if (a > 0 && address >>> (32 - a) != lastHead) {
+					arrays++;
+					lastHead = address >>> (32 - a);
+				}
+				
+				for (int b = a + 1; b <= last; b++) {
+					long first = address >>> (32 - b);
+					long end = length <= b ? first + (1L << (b - length)) : first + 1;
+					
+					if (end > covered[b]) {
+						slots[b] += end - Math.max(first, covered[b]);
+						covered[b] = end;
+					}
+				}
+			}
+			
+			for (int b = a + 1; b <= last; b++) {
+				costs[a][b] = arrays * MemoryReport.arrayBytes(1L << (b - a),
+						MemoryReport.REFERENCE) + slots[b] * Trie.NODE_BYTES;
+			}
+		}
+		
+		return costs;
+	}
+}
@@ -1,7 +1,12 @@
 package main;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.Scanner;
-import java.util.Vector;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 /********************************************************************
  * Trie.java
@@ -11,16 +16,64 @@ import java.util.Vector;
  * @author Tyler McCarthy
  * @version Nov 4, 2014
  *******************************************************************/
-public class Trie {
+public class Trie implements RoutingTable {
+	
+	/** Number of addresses walked together by the batch lookUp. */
+	private static final int BATCH_SIZE = 64;
+	
+	/** Size of a Node: children, prefix and the Trie, then 4 ints */
+	static final long NODE_BYTES = MemoryReport.objectBytes(3, 16);
+	
+	/** Size of a RootNode: a Node with its slots array */
+	private static final long ROOT_BYTES = MemoryReport.objectBytes(4, 16)
+			+ MemoryReport.objectBytes(1, 0);
+	
+	/** Size of a Prefix: the Trie, then 3 ints */
+	private static final long PREFIX_BYTES = MemoryReport.objectBytes(1, 12);
+	
+	/** Largest stride a level may have. */
+	public static final int MAX_STRIDE = 24;
 
-	/** The root of the Trie */
-	private Node root;
+	/** The root of the Trie, replaced as a whole when a batch of
+	 *  changes is published so that readers need no locks. A single
+	 *  change replaces one of its slots instead, see RootNode. */
+	private volatile RootNode root;
+	
+	/** The root of the version being changed by the writer, the 
+	 *  published root itself outside of a batch */
+	private RootNode working;
+	
+	/** Number of times changes were published. Nodes created or 
+	 *  copied since the last time carry version + 1 and are not yet
+	 *  seen by readers, so only they are changed in place. */
+	private volatile int version;
+	
+	/** Set between beginUpdate() and commitUpdate() */
+	private boolean batching;
+	
+	/** Set if the batch changed anything */
+	private boolean changedInBatch;
+	
+	/** Told of every published change */
+	private ArrayList<PrefixChangeListener> listeners;
+	
+	/** Number of bits consumed stepping down from each level. */
+	private int[] strides;
+	
+	/** Number of bits of the address covered by each level. */
+	private int[] levelBits;
+	
+	private volatile int numNodes;
+	private volatile int numPrefixes;
 	
-	/** Difference of the number of bits between levels. */
-	private int strideLength;
+	/** Next hops of every prefix, referenced by index. */
+	private NextHopTable nextHops;
 	
-	private int numNodes;
-	private int numPrefixes;
+	/** Every prefix added and not withdrawn, by PrefixRoutes.key(). */
+	private HashMap<Long, Prefix> prefixes;
+	
+	/** Counts lookups if LookupStats.ENABLED */
+	private LookupStats stats;
 	
 	/****************************************************************
 	 * Default constructor 
@@ -28,14 +81,101 @@ public class Trie {
 	 * @param strideLength defines stride length
 	 ***************************************************************/
 	public Trie(int strideLength){
+		this(uniformStrides(strideLength));
+	}
+	
+	/****************************************************************
+	 * Creates a Trie whose levels each have their own stride, e.g.
+	 * {16, 8, 8} or {8, 8, 8, 8}. The strides must reach 32 bits
+	 * and every level but the last must end before bit 32.
+	 * 
+	 * @param strides the stride of each level, from the root down.
+	 * @throws IllegalArgumentException if the schedule is invalid.
+	 ***************************************************************/
+	public Trie(int[] strides) {
+		this(strides, new NextHopTable());
+	}
+	
+	/****************************************************************
+	 * Creates a Trie, see Trie(int[]), whose next hops are kept in
+	 * the given table so they can be shared with other tables.
+	 * 
+	 * @param strides the stride of each level, from the root down.
+	 * @param nextHops the table interning the next hops.
+	 * @throws IllegalArgumentException if the schedule is invalid.
+	 ***************************************************************/
+	public Trie(int[] strides, NextHopTable nextHops) {
 		
-		root = new Node(-1, 0);
+		levelBits = new int[strides.length + 1];
 		
-		this.strideLength = strideLength;
+		for (int i = 0; i < strides.length; i++) {
+			if (strides[i] < 1 || strides[i] > MAX_STRIDE || levelBits[i] >= 32) {
+				throw new IllegalArgumentException("Invalid stride schedule");
+			}
+			levelBits[i + 1] = levelBits[i] + strides[i];
+		}
+		
+		if (levelBits[strides.length] < 32) {
+			throw new IllegalArgumentException("Strides must cover 32 bits");
+		}
+		
+		this.strides = strides.clone();
+		
+		working = new RootNode();
+		commit();
+		
+		this.nextHops = nextHops;
+		prefixes = new HashMap<Long, Prefix>();
+		listeners = new ArrayList<PrefixChangeListener>();
+		
+		stats = new LookupStats(levelBits.length);
+	}
+	
+	/****************************************************************
+	 * @param strideLength the stride of every level.
+	 * @return the schedule used by Trie(strideLength).
+	 ***************************************************************/
+	public static int[] uniformStrides(int strideLength) {
+		if (strideLength < 1) {
+			throw new IllegalArgumentException("Invalid stride length");
+		}
+		
+		int[] strides = new int[(32 + strideLength - 1) / strideLength];
+		Arrays.fill(strides, strideLength);
+		
+		return strides;
 	}
 	
 	/****************************************************************
-	 * Adds a prefix into the Trie.
+	 * Parses a schedule written as strides separated by dashes, 
+	 * such as "16-8-8". A single number is a uniform stride length.
+	 * 
+	 * @param schedule the schedule to parse.
+	 * @return the stride of each level.
+	 * @throws NumberFormatException if a stride is not a number.
+	 ***************************************************************/
+	public static int[] parseStrides(String schedule) {
+		String[] parts = schedule.split("-");
+		
+		if (parts.length == 1) {
+			return uniformStrides(Integer.parseInt(parts[0].trim()));
+		}
+		
+		int[] strides = new int[parts.length];
+		
+		for (int i = 0; i < parts.length; i++) {
+			strides[i] = Integer.parseInt(parts[i].trim());
+		}
+		
+		return strides;
+	}
+	
+	/****************************************************************
+	 * Adds a prefix into the Trie. Unless inside beginUpdate(), the
+	 * change is published at once: the nodes below the root on the 
+	 * way to the prefix are copied and each root slot they hang from
+	 * is replaced, so the cost grows with the prefix's expansion and 
+	 * not with the root. Large loads should still be batched.
 	 * 
 	 * @param prefix the IP address of the prefix.
 	 * @param prefixLength the number of bits in the prefix.
@@ -43,12 +183,234 @@ public class Trie {
 	 * @param nextHop the IP address of the next hop.
 	 ***************************************************************/
 	public void add(String prefix, int prefixLength, String nextHop){
+		add(convertIPtoInt(prefix, 32), prefixLength, nextHop);
+	}
+	
+	/****************************************************************
+	 * Adds a prefix into the Trie, see add(String, int, String).
+	 * 
+	 * @param prefix the bits of the prefix, left aligned. Bits past
+	 *        the prefix length are ignored.
+	 * @param prefixLength the number of bits in the prefix.
+	 * @param nextHop the IP address of the next hop.
+	 ***************************************************************/
+	public synchronized void add(int prefix, int prefixLength, 
+			String nextHop) {
+		add(prefix, prefixLength, nextHops.intern(nextHop));
+	}
+	
+	/****************************************************************
+	 * Adds a prefix into the Trie, see add(String, int, String).
+	 * 
+	 * @param prefix the bits of the prefix, left aligned. Bits past
+	 *        the prefix length are ignored.
+	 * @param prefixLength the number of bits in the prefix.
+	 * @param hop the index of the next hop in getNextHops().
+	 ***************************************************************/
+	public synchronized void add(int prefix, int prefixLength, int hop) {
+		
+		if (prefixLength < 0 || prefixLength > 32) {
+			throw new IllegalArgumentException("Invalid prefix length");
+		}
+		
+		if (hop < 0 || hop >= nextHops.size()) {
+			throw new IllegalArgumentException("Unknown next hop: " + hop);
+		}
+		
+		int prefBits = prefixLength == 0 ? 0 : prefix >>> (32 - prefixLength);
 		
-		int prefBits = convertIPtoInt(prefix, prefixLength);
+		Prefix p = new Prefix(prefBits, prefixLength, hop);
 		
-		Prefix p = new Prefix(prefBits, prefixLength, nextHop);
+		prefixes.put(PrefixRoutes.key(prefBits, prefixLength), p);
+		Counts counts = new Counts();
+		working = (RootNode) insertPrefix(p, working, counts);
+		counts.apply();
 		
-		insertPrefix(p);
+		publish(prefBits, prefixLength);
+	}
+	
+	/****************************************************************
+	 * Changes the next hop of a prefix, adding the prefix if it is
+	 * not in the Trie. The same as add(), which replaces a prefix of
+	 * the same length.
+	 * 
+	 * @param prefix the IP address of the prefix.
+	 * @param prefixLength the number of bits in the prefix.
+	 * @param nextHop the IP address of the new next hop.
+	 ***************************************************************/
+	public void update(String prefix, int prefixLength, String nextHop) {
+		add(prefix, prefixLength, nextHop);
+	}
+	
+	/****************************************************************
+	 * Removes a prefix from the Trie. Every node it was expanded to 
+	 * falls back to the next longest prefix covering it, and nodes 
+	 * left empty are removed. Costs about as much as adding the 
+	 * prefix did.
+	 * 
+	 * @param prefix the IP address of the prefix.
+	 * @param prefixLength the number of bits in the prefix.
+	 * @return false if the prefix was not in the Trie.
+	 ***************************************************************/
+	public boolean withdraw(String prefix, int prefixLength) {
+		return withdraw(convertIPtoInt(prefix, 32), prefixLength);
+	}
+	
+	/****************************************************************
+	 * Removes a prefix from the Trie, see withdraw(String, int).
+	 * 
+	 * @param prefix the bits of the prefix, left aligned. Bits past
+	 *        the prefix length are ignored.
+	 * @param prefixLength the number of bits in the prefix.
+	 * @return false if the prefix was not in the Trie.
+	 ***************************************************************/
+	public synchronized boolean withdraw(int prefix, int prefixLength) {
+		
+		if (prefixLength < 0 || prefixLength > 32) return false;
+		
+		int prefBits = prefixLength == 0 ? 0 : prefix >>> (32 - prefixLength);
+		
+		Prefix p = prefixes.remove(PrefixRoutes.key(prefBits, prefixLength));
+		
+		if (p == null) return false;
+		
+		Counts counts = new Counts();
+		working = (RootNode) removePrefix(p, working, counts);
+		counts.apply();
+		
+		publish(prefBits, prefixLength);
+		
+		return true;
+	}
+	
+	/****************************************************************
+	 * Adds every route of the list, building the subtrees under the
+	 * root in parallel on the common fork-join pool. Prefixes no 
+	 * longer than the first stride are added first. The rest are 
+	 * grouped by their first stride chunk, and each group is added 
+	 * to the one subtree it falls in, which no other group touches.
+	 * The result is the same as adding the routes in order.
+	 * 
+	 * Everything is built into a private copy of the root, as in a
+	 * batch, and published once at the end, so lookups see either
+	 * none or all of the routes.
+	 * 
+	 * @param routes the routes to add.
+	 ***************************************************************/
+	public synchronized void addAll(RouteList routes) {
+		boolean inBatch = batching;
+		batching = true;
+		working = writable(working);
+		
+		int size = routes.size();
+		int rootStride = strides[0];
+		int chunks = 1 << rootStride;
+		
+		/* Maps the list's next hop indices to this Trie's, unless the
+		 * two share their next hops */
+		NextHopTable listHops = routes.getNextHops();
+		int[] hopMap = new int[listHops.size()];
+		
+		for (int i = 0; i < hopMap.length; i++) {
+			hopMap[i] = listHops == nextHops ? i : nextHops.intern(listHops.get(i));
+		}
+		
+		Counts counts = new Counts();
+		
+		Prefix[] deep = new Prefix[size];
+		int numDeep = 0;
+		
+		/* Number of deep prefixes before each chunk's group */
+		int[] groupStart = new int[chunks + 1];
+		
+		for (int i = 0; i < size; i++) {
+			int length = routes.getLength(i);
+			int bits = length == 0 ? 0 : routes.getPrefix(i) >>> (32 - length);
+			
+			Prefix p = new Prefix(bits, length, hopMap[routes.getHop(i)]);
+			prefixes.put(PrefixRoutes.key(bits, length), p);
+			
+			if (length <= rootStride) {
+				working = (RootNode) insertPrefix(p, working, counts);
+			} else {
+				deep[numDeep++] = p;
+				groupStart[(bits >>> (length - rootStride)) + 1]++;
+			}
+		}
+		
+		for (int c = 0; c < chunks; c++) groupStart[c + 1] += groupStart[c];
+		
+		/* Sorts the deep prefixes by chunk, keeping their order */
+		Prefix[] grouped = new Prefix[numDeep];
+		int[] next = Arrays.copyOf(groupStart, chunks);
+		
+		for (int i = 0; i < numDeep; i++) {
+			Prefix p = deep[i];
+			grouped[next[p.bits >>> (p.length - rootStride)]++] = p;
+		}
+		
+		Node[] subtrees = new Node[chunks];
+		
+		counts.add(ForkJoinPool.commonPool().invoke(
+				new BuildTask(grouped, groupStart, subtrees, 0, chunks)));
+		
+		/* Stitches the new subtrees under the root */
+		for (int c = 0; c < chunks; c++) {
+			if (subtrees[c] == null) continue;
+			
+			if (working.getNextStep(c) == null) working.addChild(subtrees[c]);
+			else working.setChild(subtrees[c]);
+		}
+		
+		counts.apply();
+		
+		batching = inBatch;
+		publish(0, 0);
+	}
+	
+	/****************************************************************
+	 * Starts a batch of changes. Lookups keep seeing the Trie as it
+	 * was until commitUpdate(), and nodes copied for one change of
+	 * the batch are reused by the rest.
+	 ***************************************************************/
+	public synchronized void beginUpdate() {
+		batching = true;
+	}
+	
+	/****************************************************************
+	 * Publishes every change since beginUpdate() at once and ends 
+	 * the batch. The listeners are told that any lookup may have
+	 * changed.
+	 ***************************************************************/
+	public synchronized void commitUpdate() {
+		batching = false;
+		commit();
+		
+		if (changedInBatch) {
+			changedInBatch = false;
+			
+			for (PrefixChangeListener listener : listeners) {
+				listener.prefixChanged(0, 0);
+			}
+		}
+	}
+	
+	/****************************************************************
+	 * Has the listener told of every change published from now on,
+	 * after it is published and by the thread making it.
+	 * 
+	 * @param listener the listener.
+	 ***************************************************************/
+	public synchronized void addChangeListener(PrefixChangeListener listener) {
+		listeners.add(listener);
+	}
+	
+	/****************************************************************
+	 * @return the number of times changes were published, which 
+	 *         changes whenever a lookup might answer differently.
+	 ***************************************************************/
+	public int getVersion() {
+		return version;
 	}
 	
 	/****************************************************************
@@ -65,83 +427,311 @@ public class Trie {
 		
 		int data = convertIPtoInt(ipAddr, ipAddressLength);
 		
-		String result = lookUp(new Prefix(data, ipAddressLength, null), root);
+		return nextHops.get(lookUp(data));
+	}
+	
+	/****************************************************************
+	 * Looks up the given IP address and returns the index of the 
+	 * next hop associated with it. Returns NextHopTable.NO_MATCH if 
+	 * there is no matching prefix. Allocates nothing and takes no
+	 * locks, seeing the last published version of the Trie.
+	 * 
+	 * @param ipv4 the bits of the IPv4 address to lookup
+	 * @return the index of the next hop, see getNextHop(int).
+	 ***************************************************************/
+	public int lookUp(int ipv4) {
+		
+		if (LookupStats.ENABLED) return countedLookUp(ipv4);
+		
+		RootNode top = root;
+		int best = top.prefix != null ? top.prefix.hop : NextHopTable.NO_MATCH;
 		
-		if (result == null) result = "NoMatch";
+		Node current = top.slots.get(childIndex(ipv4, 0));
 		
-		return result;
+		while (current != null) {
+			if (current.prefix != null) best = current.prefix.hop;
+			
+			if (current.children == null) return best;
+			
+			/* Null if the node contains no children with the next step */
+			current = current.children[childIndex(ipv4, current.level)];
+		}
+		
+		return best;
+	}
+	
+	/****************************************************************
+	 * lookUp(int) counting the lookup in getStats().
+	 ***************************************************************/
+	private int countedLookUp(int ipv4) {
+		boolean sampled = LookupStats.sample();
+		long start = sampled ? System.nanoTime() : 0;
+		
+		RootNode top = root;
+		int best = top.prefix != null ? top.prefix.hop : NextHopTable.NO_MATCH;
+		int level = 0;
+		
+		Node current = top.slots.get(childIndex(ipv4, 0));
+		
+		while (current != null) {
+			level = current.level;
+			
+			if (current.prefix != null) best = current.prefix.hop;
+			
+			if (current.children == null) break;
+			
+			current = current.children[childIndex(ipv4, current.level)];
+		}
+		
+		if (sampled) stats.recordLatency(System.nanoTime() - start);
+		stats.record(level, best);
+		
+		return best;
+	}
+	
+	/****************************************************************
+	 * Looks up a batch of IP addresses, writing the index of each
+	 * one's next hop into the matching position of hops. The batch
+	 * is walked one level at a time in blocks of BATCH_SIZE so the
+	 * node fetches for different addresses overlap. Counted in 
+	 * getStats() like single lookups, but never timed.
+	 *
+	 * @param ipv4s the bits of the IPv4 addresses to lookup.
+	 * @param hops receives the next hop index for each address.
+	 * @param count the number of addresses to lookup.
+	 ***************************************************************/
+	public void lookUp(int[] ipv4s, int[] hops, int count) {
+		
+		Node[] cursors = new Node[Math.min(count, BATCH_SIZE)];
+		
+		/* The whole batch starts from the same root, though a single
+		 * change published meanwhile may reach only some lookups */
+		RootNode top = root;
+		int rootHop = top.prefix != null ? top.prefix.hop : NextHopTable.NO_MATCH;
+		
+		for (int start = 0; start < count; start += BATCH_SIZE) {
+			int end = Math.min(start + BATCH_SIZE, count);
+			int active = 0;
+			
+			for (int i = start; i < end; i++) {
+				Node first = top.slots.get(childIndex(ipv4s[i], 0));
+				
+				cursors[i - start] = first;
+				hops[i] = rootHop;
+				
+				if (first != null) active++;
+				else if (LookupStats.ENABLED) stats.record(0, rootHop);
+			}
+			
+			/* Steps every unfinished lookup down one level per pass */
+			while (active > 0) {
+				active = 0;
+				
+				for (int i = start; i < end; i++) {
+					Node current = cursors[i - start];
+					if (current == null) continue;
+					
+					if (current.prefix != null) hops[i] = current.prefix.hop;
+					
+					Node next = null;
+					if (current.children != null) {
+						next = current.children[
+								childIndex(ipv4s[i], current.level)];
+					}
+					
+					cursors[i - start] = next;
+					if (next != null) active++;
+					
+					if (LookupStats.ENABLED && next == null) {
+						stats.record(current.level, hops[i]);
+					}
+				}
+			}
+		}
+	}
+	
+	/****************************************************************
+	 * @param index a next hop index returned by lookUp(int).
+	 * @return the next hop IP address, or "NoMatch".
+	 ***************************************************************/
+	public String getNextHop(int index) {
+		return nextHops.get(index);
+	}
+	
+	/****************************************************************
+	 * Compiles the Trie as it stands into a flat, read only 
+	 * FrozenTrie. Later changes to this Trie are not reflected.
+	 * 
+	 * @return a FrozenTrie answering the same lookups as this Trie.
+	 ***************************************************************/
+	public FrozenTrie freeze() {
+		return new FrozenTrie(this);
+	}
+	
+	/****************************************************************
+	 * Compiles the Trie as it stands into a leaf-pushed, path 
+	 * compressed CompressedTrie. Later changes to this Trie are not
+	 * reflected.
+	 * 
+	 * @return a CompressedTrie answering the same lookups.
+	 ***************************************************************/
+	public CompressedTrie compress() {
+		return new CompressedTrie(this);
+	}
+	
+	/****************************************************************
+	 * @return a copy of the published root holding its children in 
+	 *         a plain array, for the engines compiled from the Trie.
+	 ***************************************************************/
+	Node getRoot() {
+		RootNode top = root;
+		Node copy = new Node(top.data, top.level);
+		
+		copy.prefix = top.prefix;
+		copy.numChildren = top.numChildren;
+		
+		if (top.numChildren > 0) copy.children = top.toArray();
+		
+		return copy;
+	}
+	
+	int[] getStrides() {
+		return strides;
+	}
+	
+	public NextHopTable getNextHops() {
+		return nextHops;
 	}
 	
 	public int getNumNodes() {
 		return numNodes;
 	}
 	
+	/****************************************************************
+	 * @return the lookup counters, which stay at zero unless the JVM
+	 *         runs with -Dmain.lookupStats=true.
+	 ***************************************************************/
+	public LookupStats getStats() {
+		return stats;
+	}
+	
 	public int getNumPrefixes() {
 		return numPrefixes;
 	}
 	
 	/****************************************************************
-	 * Looks up the given IP address and returns the next hop 
-	 * associated with it. Returns "No Match" if there is no 
-	 * matching prefix.
+	 * Counts the memory of the published Trie: each node and its
+	 * children array under the node's level, then every prefix, the
+	 * map indexing them and the next hops.
 	 * 
-	 * @param ipBits representation of the IPv4 address to lookup
-	 * @param current the node currently being compared.
-	 * @return the next hop associated with the given IP if any.
+	 * @return the memory report.
 	 ***************************************************************/
-	private String lookUp(Prefix toLookup, Node current) {
+	public synchronized MemoryReport getMemoryReport() {
+		MemoryReport report = new MemoryReport("Trie", levelBits.length);
 		
-		/* End case */
-		if (current.children.isEmpty()) {
-			if (current.prefix == null) return null;
-			return current.prefix.nextHop;
-		} else {	
-			int nodeLength = strideLength * (current.level + 1);
-			int bits = toLookup.bits;
-			int pLength = toLookup.length;
-			
-			if (pLength < nodeLength) {
-				pLength = nodeLength;
-				bits <<= nodeLength - toLookup.length;
-			}
-			
-			int undesiredLength = pLength - nodeLength;
-			bits >>>= undesiredLength;
-				
-			Node next = current.getNextStep(bits);
-
-			/* If the current node has a next hop IP */
-			if (current.prefix != null) {
-				
-				if (next == null) {
-					return current.prefix.nextHop;
-				}
-				
-				String result = lookUp(toLookup, next);
-				
-				if (result == null) {
-					return current.prefix.nextHop;
-				} else {
-					return result;
-				}
-			}
-			
-			/* If the current node contains no children with the next step */
-			if (next == null) {
-				return null;
-			}		
+		report.addNode(0, ROOT_BYTES + MemoryReport.arrayBytes(
+				root.slots.length(), MemoryReport.REFERENCE), root.numChildren);
+		
+		for (int i = 0; i < root.slots.length(); i++) {
+			Node child = root.slots.get(i);
 			
-			return lookUp(toLookup, next);
+			if (child != null) countNodes(child, report);
+		}
+		
+		int size = prefixes.size();
+		
+		report.addPart("prefixes", size * PREFIX_BYTES);
+		report.addPart("prefix index", MemoryReport.hashMapBytes(size)
+				+ size * MemoryReport.objectBytes(0, 8));
+		report.addPart("next hops", MemoryReport.nextHopBytes(nextHops));
+		
+		return report;
+	}
+	
+	private static void countNodes(Node node, MemoryReport report) {
+		if (node.children == null) {
+			report.addNode(node.level, NODE_BYTES, 0);
+			return;
+		}
+		
+		report.addNode(node.level, NODE_BYTES + MemoryReport.arrayBytes(
+				node.children.length, MemoryReport.REFERENCE), node.numChildren);
+		
+		for (Node child : node.children) {
+			if (child != null) countNodes(child, report);
 		}
 	}
 	
 	/****************************************************************
-	 * Inserts the given prefix into the Trie.
+	 * Finds which child of a node at the given level the address 
+	 * continues to. Bits past the end of the address read as zero.
 	 * 
-	 * @param prefix the Prefix object representing what's to be added.
+	 * @param ipBits the bits of the IPv4 address.
+	 * @param level the level of the node being stepped from.
+	 * @return the index into that node's children.
+	 ***************************************************************/
+	private int childIndex(int ipBits, int level) {
+		int shift = 32 - levelBits[level + 1];
+		int mask = (1 << strides[level]) - 1;
+		
+		if (shift < 0) return (ipBits << -shift) & mask;
+		
+		return (ipBits >>> shift) & mask;
+	}
+	
+	/****************************************************************
+	 * Publishes the working version to readers. The root is written
+	 * before the version so a reader seeing the new version also 
+	 * sees the new root.
 	 ***************************************************************/
-	private void insertPrefix(Prefix prefix) {
-		insertPrefix(prefix, root);
+	private void commit() {
+		root = working;
+		version++;
+	}
+	
+	/****************************************************************
+	 * Publishes a change to the lookups under a prefix and tells the
+	 * listeners, unless inside a batch.
+	 * 
+	 * @param bits the prefix bits, as given by convertIPtoInt().
+	 * @param length the number of bits in the prefix.
+	 ***************************************************************/
+	private void publish(int bits, int length) {
+		if (batching) {
+			changedInBatch = true;
+			return;
+		}
+		
+		commit();
+		
+		int prefix = length == 0 ? 0 : bits << (32 - length);
+		
+		for (PrefixChangeListener listener : listeners) {
+			listener.prefixChanged(prefix, length);
+		}
+	}
+	
+	/****************************************************************
+	 * Returns a node the writer may change: the node itself if it
+	 * is not yet published, otherwise a copy whose parent must be
+	 * pointed at it. Outside of a batch the published root is 
+	 * changed in place, one slot at a time.
+	 ***************************************************************/
+	private Node writable(Node node) {
+		if (node.version == version + 1) return node;
+		
+		if (node instanceof RootNode) {
+			return batching ? new RootNode((RootNode) node) : node;
+		}
+		
+		return new Node(node);
+	}
+	
+	/****************************************************************
+	 * writable() for the root.
+	 ***************************************************************/
+	private RootNode writable(RootNode node) {
+		return (RootNode) writable((Node) node);
 	}
 	
 	/****************************************************************
@@ -149,62 +739,159 @@ public class Trie {
 	 * 
 	 * @param prefix the Prefix object representing what's to be added.
 	 * @param current the node currently being compared.
+	 * @param counts receives the number of nodes and prefixes added.
+	 * @return current, or the copy of it holding the change.
 	 ***************************************************************/
-	private void insertPrefix(Prefix toInsert, Node current) {
+	private Node insertPrefix(Prefix toInsert, Node current, 
+			Counts counts) {
 		
 		/* End Case. We've reached the desired level in the Trie. */
-		if (strideLength * current.level >= toInsert.length) {
+		if (levelBits[current.level] >= toInsert.length) {
 			
 			/* Doesn't change prefix if a better one is already there. */
 			if (current.prefix != null) {
 				if (current.prefix.length > toInsert.length) {
-					return;
+					return current;
 				}
 			}
-			if (current.prefix == null) numPrefixes ++;
+			current = writable(current);
+			
+			if (current.prefix == null) counts.prefixes++;
 			current.setPrefix(toInsert);
 		} else {
+			current = writable(current);
+			
 			int[] destArr = destinationData(toInsert, current.level + 1);
 			
 			/* Loops through the array of destination data */
 			for (int i = 0; i < destArr.length; i++) {
 				Node next = current.getNextStep(destArr[i]);
+				boolean added = next == null;
 				
-				if (next == null) {
+				if (added) {
 					next = new Node(destArr[i], current.level + 1);
-					current.addChild(next);
-					numNodes++;
+					counts.nodes++;
+				}
+				
+				Node changed = insertPrefix(toInsert, next, counts);
+				
+				/* Linked only once complete, as the parent may be the
+				 * published root */
+				if (added) current.addChild(changed);
+				else if (changed != next) current.setChild(changed);
+			}
+		}
+		
+		return current;
+	}
+	
+	/****************************************************************
+	 * Removes the given prefix from the nodes it was expanded to.
+	 * 
+	 * @param toRemove the prefix, already taken out of prefixes.
+	 * @param current the node currently being compared.
+	 * @param counts receives the number of nodes and prefixes 
+	 *        removed, as negative numbers.
+	 * @return current or the copy of it holding the change, or null
+	 *         if it is left with no prefix or children and should 
+	 *         be removed.
+	 ***************************************************************/
+	private Node removePrefix(Prefix toRemove, Node current, 
+			Counts counts) {
+		
+		/* End Case. We've reached the level the prefix is stored at. */
+		if (levelBits[current.level] >= toRemove.length) {
+			
+			/* Nodes holding a longer prefix are left alone */
+			if (current.prefix == toRemove) {
+				current = writable(current);
+				current.setPrefix(coveringPrefix(toRemove, current.level));
+				
+				if (current.prefix == null) counts.prefixes--;
+			}
+		} else {
+			int[] destArr = destinationData(toRemove, current.level + 1);
+			
+			for (int i = 0; i < destArr.length; i++) {
+				Node next = current.getNextStep(destArr[i]);
+				
+				if (next == null) continue;
+				
+				Node changed = removePrefix(toRemove, next, counts);
+				
+				if (changed == next) continue;
+				
+				current = writable(current);
+				
+				if (changed == null) {
+					current.removeChild(next);
+					counts.nodes--;
+				} else {
+					current.setChild(changed);
 				}
-
-				insertPrefix(toInsert, next);
 			}
 		}
+		
+		/* The root is kept even when empty */
+		if (current.level > 0 && current.prefix == null 
+				&& current.children == null) {
+			return null;
+		}
+		
+		return current;
+	}
+	
+	/****************************************************************
+	 * Finds the longest prefix shorter than p that covers it and is
+	 * stored at the given level, which is what nodes at that level 
+	 * held by p fall back to.
+	 * 
+	 * @param p the prefix being withdrawn.
+	 * @param level the level of the nodes.
+	 * @return the covering prefix, or null if there is none.
+	 ***************************************************************/
+	private Prefix coveringPrefix(Prefix p, int level) {
+		int shortest = level == 0 ? 0 : levelBits[level - 1] + 1;
+		
+		for (int length = p.length - 1; length >= shortest; length--) {
+			int bits = length == 0 ? 0 : p.bits >>> (p.length - length);
+			
+			Prefix covering = prefixes.get(PrefixRoutes.key(bits, length));
+			
+			if (covering != null) return covering;
+		}
+		
+		return null;
 	}
 	
+	/****************************************************************
+	 * Lists the data of every node at the given level that the 
+	 * prefix expands to.
+	 * 
+	 * @param p the prefix being inserted.
+	 * @param level the level of the nodes.
+	 * @return the first levelBits[level] bits of each node.
+	 ***************************************************************/
 	private int[] destinationData(Prefix p, int level) {
 		
 		// Number of significant bits in the node's data field
-		int nodeLen = strideLength * level;
+		int nodeLen = levelBits[level];
 		int numDests;
 		
 		if (p.length >= nodeLen) numDests = 1;
-		else {
-			double power = (double) ((nodeLen) - p.length);
-			numDests = (int) Math.pow(2.0, power);
-		}
+		else numDests = 1 << (nodeLen - p.length);
 		
 		int[] destinations = new int[numDests];
 		
-		// Difference from prefix length to next multiple of stride length
-		int len = 0; 
-		while ((len + p.length) % strideLength != 0) len ++;
-		int data = p.bits << len;
+		/* Aligns the prefix to the node length. A long is used since 
+		 * the last level may cover more than 32 bits. */
+		long data = (p.bits & 0xFFFFFFFFL) << (32 - p.length);
 		
-		int unwantedLen = ((p.length + len) - nodeLen);
-		data >>>= unwantedLen;
+		if (nodeLen <= 32) data >>>= 32 - nodeLen;
+		else data <<= nodeLen - 32;
 		
 		for (int i = 0; numDests > 0; i++, numDests--) {
-			destinations[i] = data | i;
+			destinations[i] = (int) (data | i);
 		}
 		
 		return destinations;
@@ -218,7 +905,7 @@ public class Trie {
 	 * @param prefixLength the number of relevant bits in the prefix.
 	 * @return the prefix as an integer representing the bits.
 	 ***************************************************************/
-	private int convertIPtoInt(String ipAddr, int prefixLength) {
+	static int convertIPtoInt(String ipAddr, int prefixLength) {
 		String[] ipArr = ipAddr.split("\\.");
 		
 		int data = (Integer.parseInt(ipArr[0]) & 0xFF) << 24;
@@ -226,6 +913,8 @@ public class Trie {
 		data |= (Integer.parseInt(ipArr[2]) & 0xFF) << 8;
 		data |= (Integer.parseInt(ipArr[3]) & 0xFF);
 		
+		if (prefixLength == 0) return 0;
+		
 		return data >>> (32 - prefixLength);
 	}	
 	
@@ -236,6 +925,7 @@ public class Trie {
 		
 		System.out.println("Please use commands: " + 
 				"add <prefix> <pathLength> <nextHop>\n" + 
+				"                     withdraw <prefix>\n" + 
 				"                     lookup <IP address>");
 		
 		while(true) {
@@ -260,6 +950,17 @@ public class Trie {
 					t.add(prefix, prefixLength, nextHop);
 					
  					System.out.println("---\tAdded to Trie");
+					
+				} else if(input.startsWith("withdraw ")) {
+					String[] prefixArr = input.substring(9).trim().split("/");
+					
+					int prefixLength = Integer.parseInt(prefixArr[1]);
+					
+					if (t.withdraw(prefixArr[0], prefixLength)) {
+						System.out.println("---\tWithdrawn from Trie");
+					} else {
+						System.out.println("---\tNot in Trie");
+					}
 				
 				} else if(input.startsWith("lookup ")) {
 					input = input.substring(7);
@@ -281,21 +982,131 @@ public class Trie {
 		}
 	}
 	
-	private class Node {
+	/****************************************************************
+	 * Changes to the number of nodes and prefixes, counted apart so
+	 * that parallel builds share no counters.
+	 ***************************************************************/
+	private class Counts {
+		int nodes;
+		int prefixes;
 		
-		Vector<Node> children;
+		void add(Counts other) {
+			nodes += other.nodes;
+			prefixes += other.prefixes;
+		}
+		
+		/** Adds the changes to the Trie's totals */
+		void apply() {
+			numNodes += nodes;
+			numPrefixes += prefixes;
+		}
+	}
+	
+	/****************************************************************
+	 * Builds the subtrees under a range of the root's children for
+	 * addAll(), splitting the range while it holds many prefixes.
+	 * Only reads the working root, the subtrees are stitched under
+	 * it once every task is done.
+	 ***************************************************************/
+	private class BuildTask extends RecursiveTask<Counts> {
+		
+		private static final long serialVersionUID = 1L;
+		
+		/** Number of prefixes worth splitting a range over */
+		private static final int SPLIT_PREFIXES = 4096;
+		
+		private Prefix[] grouped;
+		private int[] groupStart;
+		private Node[] subtrees;
+		
+		/** The range of root children, last exclusive */
+		private int first;
+		private int last;
+		
+		BuildTask(Prefix[] grouped, int[] groupStart, Node[] subtrees, 
+				int first, int last) {
+			this.grouped = grouped;
+			this.groupStart = groupStart;
+			this.subtrees = subtrees;
+			this.first = first;
+			this.last = last;
+		}
+		
+		protected Counts compute() {
+			int count = groupStart[last] - groupStart[first];
+			
+			if (count > SPLIT_PREFIXES && last - first > 1) {
+				int middle = (first + last) >>> 1;
+				
+				BuildTask left = new BuildTask(grouped, groupStart, subtrees, 
+						first, middle);
+				BuildTask right = new BuildTask(grouped, groupStart, subtrees, 
+						middle, last);
+				
+				left.fork();
+				
+				Counts counts = right.compute();
+				counts.add(left.join());
+				
+				return counts;
+			}
+			
+			Counts counts = new Counts();
+			
+			for (int c = first; c < last; c++) {
+				if (groupStart[c] == groupStart[c + 1]) continue;
+				
+				Node subtree = working.getNextStep(c);
+				
+				if (subtree == null) {
+					subtree = new Node(c, 1);
+					counts.nodes++;
+				}
+				
+				for (int i = groupStart[c]; i < groupStart[c + 1]; i++) {
+					subtree = insertPrefix(grouped[i], subtree, counts);
+				}
+				
+				subtrees[c] = subtree;
+			}
+			
+			return counts;
+		}
+	}
+	
+	class Node {
+		
+		/** Indexed by the node's stride chunk, null until first child */
+		Node[] children;
+		
+		int numChildren;
 		
 		Prefix prefix;
 		
 		int data;
 		int level;
 		
+		/** The version the node was created for, see writable() */
+		final int version;
+		
 		public Node(int data,int level) {
 			this.data = data;
 			this.level = level;
 			
 			prefix = null;
-			children = new Vector<Node>();
+			children = null;
+			
+			version = Trie.this.version + 1;
+		}
+		
+		/** Copies a published node for the writer to change */
+		public Node(Node other) {
+			this(other.data, other.level);
+			
+			prefix = other.prefix;
+			numChildren = other.numChildren;
+			
+			if (other.children != null) children = other.children.clone();
 		}
 		
 		public void setPrefix(Prefix prefix) {
@@ -303,28 +1114,98 @@ public class Trie {
 		}
 		
 		public void addChild(Node child) {
-			children.add(child);
+			if (children == null) {
+				children = new Node[1 << strides[level]];
+			}
+			
+			children[child.data & (children.length - 1)] = child;
+			numChildren++;
+		}
+		
+		public void removeChild(Node child) {
+			children[child.data & (children.length - 1)] = null;
+			
+			if (--numChildren == 0) children = null;
+		}
+		
+		/** Replaces the child with the same data by the given copy */
+		public void setChild(Node child) {
+			children[child.data & (children.length - 1)] = child;
 		}
 
 		public Node getNextStep(int data) {
-			for (Node child : children) {
-				if (child.data == data)
-					return child;
-			}
+			if (children == null) return null;
 			
-			return null;
+			return children[data & (children.length - 1)];
+		}
+	}
+	
+	/****************************************************************
+	 * The root, whose children are kept in an AtomicReferenceArray.
+	 * Outside of a batch a change below the root builds its new 
+	 * subtree aside and publishes it by setting the one slot it 
+	 * hangs from, so the 2^strides[0] slots are never copied. A 
+	 * lookup sees the old or the new subtree as a whole. A batch 
+	 * still copies the root once and publishes it by commit().
+	 ***************************************************************/
+	class RootNode extends Node {
+		
+		final AtomicReferenceArray<Node> slots;
+		
+		public RootNode() {
+			super(-1, 0);
+			
+			slots = new AtomicReferenceArray<Node>(1 << strides[0]);
+		}
+		
+		/** Copies a published root for a batch to change */
+		public RootNode(RootNode other) {
+			super(-1, 0);
+			
+			prefix = other.prefix;
+			numChildren = other.numChildren;
+			slots = new AtomicReferenceArray<Node>(other.toArray());
+		}
+		
+		/** @return the children in a new array, null where none */
+		Node[] toArray() {
+			Node[] array = new Node[slots.length()];
+			
+			for (int i = 0; i < array.length; i++) array[i] = slots.get(i);
+			
+			return array;
+		}
+		
+		public void addChild(Node child) {
+			slots.set(child.data & (slots.length() - 1), child);
+			numChildren++;
+		}
+		
+		public void removeChild(Node child) {
+			slots.set(child.data & (slots.length() - 1), null);
+			numChildren--;
+		}
+		
+		public void setChild(Node child) {
+			slots.set(child.data & (slots.length() - 1), child);
+		}
+		
+		public Node getNextStep(int data) {
+			return slots.get(data & (slots.length() - 1));
 		}
 	}
 	
-	private class Prefix {
-		int bits;
-		int length;
-		String nextHop;
+	class Prefix {
+		final int bits;
+		final int length;
+		
+		/** Index of the next hop in the Trie's NextHopTable */
+		final int hop;
 		
-		public Prefix(int bits, int length, String nextHop) {
+		public Prefix(int bits, int length, int hop) {
 			this.bits = bits;
 			this.length = length;
-			this.nextHop = nextHop;
+			this.hop = hop;
 		}
 	}
 }
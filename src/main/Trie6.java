@@ -0,0 +1,425 @@
+package main;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+/********************************************************************
+ * Multibit trie for IPv6 longest prefix match. Addresses and
+ * prefixes are 128-bit keys held in two longs, hi being the first
+ * 64 bits.
+ *
+ * The default strides follow the IPv6 table: nothing is routed
+ * shorter than about /16 and most prefixes are /32 to /48, with a
+ * smaller bump at /64. The first level takes 16 bits, 8-bit levels
+ * reach /48, one 16-bit level reaches /64 and 8-bit levels cover
+ * the rarely used rest, so a /48 is found in five steps.
+ *
+ * @author agent
+ * @version Oct 17, 2026
+ *******************************************************************/
+public class Trie6 {
+	
+	/** The default strides, summing to 128 */
+	public static final int[] DEFAULT_STRIDES =
+		{16, 8, 8, 8, 8, 16, 8, 8, 8, 8, 8, 8, 8, 8};
+	
+	/** The root of the Trie */
+	private Node root;
+	
+	/** Number of bits consumed stepping down from each level. */
+	private int[] strides;
+	
+	/** Number of bits of the address covered by each level. */
+	private int[] levelBits;
+	
+	private int numNodes;
+	private int numPrefixes;
+	
+	/** Next hops of every prefix, referenced by index. */
+	private NextHopTable nextHops;
+	
+	public Trie6() {
+		this(DEFAULT_STRIDES, new NextHopTable());
+	}
+	
+	/****************************************************************
+	 * Creates a Trie6 with the default strides whose next hops are
+	 * kept in the given table, so they can be shared with the IPv4
+	 * table.
+	 *
+	 * @param nextHops the table interning the next hops.
+	 ***************************************************************/
+	public Trie6(NextHopTable nextHops) {
+		this(DEFAULT_STRIDES, nextHops);
+	}
+	
+	/****************************************************************
+	 * Creates a Trie6 whose levels each have their own stride. The
+	 * strides must reach 128 bits and every level but the last must
+	 * end before bit 128.
+	 *
+	 * @param strides the stride of each level, from the root down.
+	 * @param nextHops the table interning the next hops.
+	 * @throws IllegalArgumentException if the schedule is invalid.
+	 ***************************************************************/
+	public Trie6(int[] strides, NextHopTable nextHops) {
+		
+		levelBits = new int[strides.length + 1];
+		
+		for (int i = 0; i < strides.length; i++) {
+			if (strides[i] < 1 || strides[i] > Trie.MAX_STRIDE
+					|| levelBits[i] >= 128) {
+				throw new IllegalArgumentException("Invalid stride schedule");
+			}
+			levelBits[i + 1] = levelBits[i] + strides[i];
+		}
+		
+		if (levelBits[strides.length] < 128) {
+			throw new IllegalArgumentException("Strides must cover 128 bits");
+		}
+		
+		this.strides = strides.clone();
+		
+		root = new Node(0);
+		
+		this.nextHops = nextHops;
+	}
+	
+	/****************************************************************
+	 * Adds a prefix into the Trie.
+	 *
+	 * @param prefix the IPv6 address of the prefix.
+	 * @param prefixLength the number of bits in the prefix.
+	 * @param nextHop the IP address of the next hop.
+	 ***************************************************************/
+	public void add(String prefix, int prefixLength, String nextHop) {
+		long[] bits = new long[2];
+		parseIPv6(prefix, bits);
+		
+		add(bits[0], bits[1], prefixLength, nextHops.intern(nextHop));
+	}
+	
+	/****************************************************************
+	 * Adds a prefix into the Trie.
+	 *
+	 * @param hi the first 64 bits of the prefix.
+	 * @param lo the last 64 bits of the prefix.
+	 * @param prefixLength the number of bits in the prefix.
+	 * @param hop the index of the next hop in getNextHops().
+	 ***************************************************************/
+	public void add(long hi, long lo, int prefixLength, int hop) {
+		if (prefixLength < 0 || prefixLength > 128) {
+			throw new IllegalArgumentException("Invalid prefix length");
+		}
+		
+		/* Clears the bits past the prefix */
+		if (prefixLength < 64) {
+			hi &= prefixLength == 0 ? 0 : -1L << (64 - prefixLength);
+			lo = 0;
+		} else if (prefixLength < 128) {
+			lo &= prefixLength == 64 ? 0 : -1L << (128 - prefixLength);
+		}
+		
+		insertPrefix(new Prefix(hi, lo, prefixLength, hop), root);
+	}
+	
+	/****************************************************************
+	 * Looks up the given IPv6 address and returns the next hop
+	 * associated with it. Returns "NoMatch" if there is no
+	 * matching prefix.
+	 *
+	 * @param ipAddr the IPv6 address to lookup
+	 * @return the next hop associated with the given IP if any.
+	 ***************************************************************/
+	public String lookUp(String ipAddr) {
+		long[] bits = new long[2];
+		parseIPv6(ipAddr, bits);
+		
+		return nextHops.get(lookUp(bits[0], bits[1]));
+	}
+	
+	/****************************************************************
+	 * Looks up the given IPv6 address and returns the index of the
+	 * next hop associated with it, or NextHopTable.NO_MATCH.
+	 * Allocates nothing.
+	 *
+	 * @param hi the first 64 bits of the address.
+	 * @param lo the last 64 bits of the address.
+	 * @return the index of the next hop, see getNextHop(int).
+	 ***************************************************************/
+	public int lookUp(long hi, long lo) {
+		
+		Node current = root;
+		int best = NextHopTable.NO_MATCH;
+		
+		while (true) {
+			if (current.prefix != null) best = current.prefix.hop;
+			
+			if (current.children == null) return best;
+			
+			int level = current.level;
+			Node next = current.children[
+					bits(hi, lo, levelBits[level], strides[level])];
+			
+			/* The current node contains no children with the next step */
+			if (next == null) return best;
+			
+			current = next;
+		}
+	}
+	
+	/****************************************************************
+	 * @param index a next hop index returned by lookUp(long, long).
+	 * @return the next hop IP address, or "NoMatch".
+	 ***************************************************************/
+	public String getNextHop(int index) {
+		return nextHops.get(index);
+	}
+	
+	public NextHopTable getNextHops() {
+		return nextHops;
+	}
+	
+	public int getNumNodes() {
+		return numNodes;
+	}
+	
+	public int getNumPrefixes() {
+		return numPrefixes;
+	}
+	
+	/****************************************************************
+	 * Counts each node and its children array under the node's 
+	 * level, then every prefix once however many nodes hold it, and
+	 * the next hops.
+	 *
+	 * @return the memory report.
+	 ***************************************************************/
+	public MemoryReport getMemoryReport() {
+		MemoryReport report = new MemoryReport("Trie6", levelBits.length);
+		Set<Prefix> seen = Collections.newSetFromMap(
+				new IdentityHashMap<Prefix, Boolean>());
+		
+		countNodes(root, report, seen);
+		
+		report.addPart("prefixes", seen.size() * MemoryReport.objectBytes(1, 24));
+		report.addPart("next hops", MemoryReport.nextHopBytes(nextHops));
+		
+		return report;
+	}
+	
+	private static void countNodes(Node node, MemoryReport report, 
+			Set<Prefix> seen) {
+		
+		long bytes = MemoryReport.objectBytes(3, 4);
+		int children = 0;
+		
+		if (node.prefix != null) seen.add(node.prefix);
+		
+		if (node.children != null) {
+			bytes += MemoryReport.arrayBytes(node.children.length, 
+					MemoryReport.REFERENCE);
+			
+			for (Node child : node.children) {
+				if (child == null) continue;
+				
+				children++;
+				countNodes(child, report, seen);
+			}
+		}
+		
+		report.addNode(node.level, bytes, children);
+	}
+	
+	/****************************************************************
+	 * Inserts the given prefix into the Trie.
+	 *
+	 * @param prefix the Prefix object representing what's to be added.
+	 * @param current the node currently being compared.
+	 ***************************************************************/
+	private void insertPrefix(Prefix toInsert, Node current) {
+		
+		/* End Case. We've reached the desired level in the Trie. */
+		if (levelBits[current.level] >= toInsert.length) {
+			
+			/* Doesn't change prefix if a better one is already there. */
+			if (current.prefix != null) {
+				if (current.prefix.length > toInsert.length) {
+					return;
+				}
+			}
+			if (current.prefix == null) numPrefixes ++;
+			current.prefix = toInsert;
+		} else {
+			int level = current.level;
+			
+			/* The bits past the prefix are zero, so the prefix expands
+			 * to consecutive children starting at first. */
+			int first = bits(toInsert.hi, toInsert.lo, levelBits[level],
+					strides[level]);
+			int count = 1;
+			
+			if (toInsert.length < levelBits[level + 1]) {
+				count = 1 << (levelBits[level + 1] - toInsert.length);
+			}
+			
+			if (current.children == null) {
+				current.children = new Node[1 << strides[level]];
+			}
+			
+			for (int i = first; i < first + count; i++) {
+				Node next = current.children[i];
+				
+				if (next == null) {
+					next = new Node(level + 1);
+					current.children[i] = next;
+					numNodes++;
+				}
+				
+				insertPrefix(toInsert, next);
+			}
+		}
+	}
+	
+	/****************************************************************
+	 * Reads bits of a 128-bit key. Bits past the end read as zero.
+	 *
+	 * @param hi the first 64 bits of the key.
+	 * @param lo the last 64 bits of the key.
+	 * @param position the first bit to read, 0 being the highest.
+	 * @param length the number of bits to read, 1 to 31.
+	 * @return the bits as an unsigned number.
+	 ***************************************************************/
+	private static int bits(long hi, long lo, int position, int length) {
+		if (position >= 64) {
+			return (int) ((lo << (position - 64)) >>> (64 - length));
+		}
+		
+		long value = (hi << position) >>> (64 - length);
+		
+		/* The bits run on into lo */
+		if (position + length > 64) {
+			value |= lo >>> (128 - position - length);
+		}
+		
+		return (int) value;
+	}
+	
+	/****************************************************************
+	 * Converts an IPv6 address in text form, such as 2001:db8::1 or
+	 * ::ffff:192.0.2.1, into its 128 bits.
+	 *
+	 * @param ipAddr the address to convert.
+	 * @param bits receives the first 64 bits then the last 64 bits.
+	 * @throws IllegalArgumentException if the address is invalid.
+	 ***************************************************************/
+	public static void parseIPv6(String ipAddr, long[] bits) {
+		int[] groups = new int[8];
+		int count = 0;
+		int gap = -1;
+		
+		int length = ipAddr.length();
+		int i = 0;
+		
+		if (ipAddr.startsWith("::")) {
+			gap = 0;
+			i = 2;
+		}
+		
+		while (i < length) {
+			if (count == 8) break;
+			
+			int end = i;
+			while (end < length && ipAddr.charAt(end) != ':') end++;
+			
+			String group = ipAddr.substring(i, end);
+			
+			if (group.indexOf('.') >= 0) {
+				if (count > 6) {
+					throw new IllegalArgumentException("Invalid IPv6: " + ipAddr);
+				}
+				
+				/* Embedded IPv4 address in the last 32 bits */
+				int ipv4 = Trie.convertIPtoInt(group, 32);
+				groups[count++] = ipv4 >>> 16;
+				groups[count++] = ipv4 & 0xFFFF;
+				i = end;
+				break;
+			}
+			
+			if (group.isEmpty() || group.length() > 4) {
+				throw new IllegalArgumentException("Invalid IPv6: " + ipAddr);
+			}
+			
+			groups[count++] = Integer.parseInt(group, 16);
+			
+			i = end + 1;
+			
+			if (end + 1 < length && ipAddr.charAt(end + 1) == ':') {
+				if (gap >= 0) {
+					throw new IllegalArgumentException("Invalid IPv6: " + ipAddr);
+				}
+				gap = count;
+				i = end + 2;
+			}
+		}
+		
+		if (i < length || (gap < 0 && count != 8) || count > 8) {
+			throw new IllegalArgumentException("Invalid IPv6: " + ipAddr);
+		}
+		
+		/* Moves the groups after "::" to the end */
+		if (gap >= 0) {
+			int moved = count - gap;
+			System.arraycopy(groups, gap, groups, 8 - moved, moved);
+			for (int j = gap; j < 8 - moved; j++) groups[j] = 0;
+		}
+		
+		bits[0] = 0;
+		bits[1] = 0;
+		
+		for (int j = 0; j < 4; j++) {
+			bits[0] = (bits[0] << 16) | groups[j];
+			bits[1] = (bits[1] << 16) | groups[j + 4];
+		}
+	}
+	
+	/****************************************************************
+	 * @param line a prefix or address in text form.
+	 * @return whether it is an IPv6 one.
+	 ***************************************************************/
+	public static boolean isIPv6(String line) {
+		return line.indexOf(':') >= 0;
+	}
+	
+	private class Node {
+		
+		/** Indexed by the level's stride chunk, null until first child */
+		Node[] children;
+		
+		Prefix prefix;
+		
+		int level;
+		
+		public Node(int level) {
+			this.level = level;
+		}
+	}
+	
+	private class Prefix {
+		long hi;
+		long lo;
+		int length;
+		
+		/** Index of the next hop in the Trie's NextHopTable */
+		int hop;
+		
+		public Prefix(long hi, long lo, int length, int hop) {
+			this.hi = hi;
+			this.lo = lo;
+			this.length = length;
+			this.hop = hop;
+		}
+	}
+}
@@ -0,0 +1,112 @@
+package main;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+
+/********************************************************************
+ * Checks that a PipelinedLookup whose reader or workers fail throws
+ * the failure to the caller rather than hanging.
+ *
+ * @author agent
+ * @version Oct 18, 2026
+ *******************************************************************/
+public class PipelinedLookupTest {
+	
+	/** How long a lookup may take before it counts as hung */
+	private static final long TIMEOUT_MILLIS = 10000;
+	
+	public static void main(String[] args) throws Exception {
+		final Trie table = new Trie(8);
+		table.add("10.0.0.0", 8, "A");
+		
+		final Trie6 table6 = new Trie6();
+		
+		/* Enough lines for several chunks, one of them not an address */
+		StringBuilder list = new StringBuilder();
+		for (int i = 0; i < 200000; i++) list.append("10.1.2.3\n");
+		list.append("not an address\n");
+		for (int i = 0; i < 200000; i++) list.append("10.1.2.3\n");
+		
+		final byte[] bytes = list.toString().getBytes(StandardCharsets.ISO_8859_1);
+		
+		expectFailure("bad line", NumberFormatException.class, new Lookup() {
+			public void run(PipelinedLookup lookup) throws IOException {
+				lookup.lookUp(Channels.newChannel(new ByteArrayInputStream(bytes)),
+						Channels.newChannel(new ByteArrayOutputStream()));
+			}
+		}, table, table6);
+		
+		/* The reader itself fails with an unchecked exception */
+		expectFailure("failing reader", IllegalStateException.class, new Lookup() {
+			public void run(PipelinedLookup lookup) throws IOException {
+				lookup.lookUp(new ReadableByteChannel() {
+					private int reads;
+					
+					public int read(ByteBuffer dst) {
+						if (++reads > 3) throw new IllegalStateException("Read failed");
+						
+						int n = 0;
+						while (dst.remaining() >= 9) {
+							dst.put("10.1.2.3\n".getBytes(StandardCharsets.ISO_8859_1));
+							n += 9;
+						}
+						return n;
+					}
+					
+					public boolean isOpen() {
+						return true;
+					}
+					
+					public void close() {
+					}
+				}, Channels.newChannel(new ByteArrayOutputStream()));
+			}
+		}, table, table6);
+		
+		System.out.println("PipelinedLookupTest passed");
+	}
+	
+	private interface Lookup {
+		void run(PipelinedLookup lookup) throws IOException;
+	}
+	
+	/****************************************************************
+	 * Runs the lookup on another thread, failing if it does not end
+	 * in time or does not throw the expected exception.
+	 ***************************************************************/
+	private static void expectFailure(String name,
+			Class<? extends Throwable> expected, final Lookup lookup,
+			RoutingTable table, Trie6 table6) throws InterruptedException {
+		
+		final PipelinedLookup pipeline = new PipelinedLookup(table, table6, 4, 2);
+		final Throwable[] thrown = new Throwable[1];
+		
+		Thread caller = new Thread() {
+			public void run() {
+				try {
+					lookup.run(pipeline);
+				} catch (Throwable e) {
+					thrown[0] = e;
+				}
+			}
+		};
+		
+		caller.setDaemon(true);
+		caller.start();
+		caller.join(TIMEOUT_MILLIS);
+		
+		if (caller.isAlive()) {
+			throw new AssertionError(name + ": lookup hung");
+		}
+		
+		if (!expected.isInstance(thrown[0])) {
+			throw new AssertionError(name + ": expected " + expected.getSimpleName()
+					+ " but got " + thrown[0]);
+		}
+	}
+}
@@ -0,0 +1,82 @@
+package main;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/********************************************************************
+ * Checks that the schedule StrideOptimizer picks for a table shaped
+ * like a BGP table builds a Trie no larger than the usual fixed
+ * three level schedules do.
+ *
+ * @author agent
+ * @version Oct 18, 2026
+ *******************************************************************/
+public class StrideOptimizerTest {
+	
+	private static final int ROUTES = 30000;
+	
+	private static final int[][] FIXED = {
+		{16, 8, 8}, {8, 16, 8}, {12, 12, 8}, {17, 7, 8}, {18, 6, 8},
+		{19, 5, 8}, {20, 4, 8}, {20, 5, 7}, {21, 4, 7}, {20, 6, 6}
+	};
+	
+	public static void main(String[] args) {
+		RouteList routes = bgpShaped(ROUTES, new Random(1));
+		
+		int[] auto = StrideOptimizer.optimize(routes, 3);
+		long autoBytes = bytes(auto, routes);
+		
+		for (int[] strides : FIXED) {
+			long fixedBytes = bytes(strides, routes);
+			
+			if (autoBytes > fixedBytes) {
+				throw new AssertionError("auto " + Arrays.toString(auto) + " takes "
+						+ autoBytes + " bytes, " + Arrays.toString(strides)
+						+ " only " + fixedBytes);
+			}
+		}
+		
+		System.out.println("StrideOptimizerTest passed");
+	}
+	
+	private static long bytes(int[] strides, RouteList routes) {
+		Trie trie = new Trie(strides);
+		trie.addAll(routes);
+		
+		return trie.getMemoryReport().getTotalBytes();
+	}
+	
+	/****************************************************************
+	 * Makes routes with about the prefix lengths of a BGP table, more
+	 * than half of them /24, clustered in a few hundred /8 blocks.
+	 ***************************************************************/
+	private static RouteList bgpShaped(int count, Random random) {
+		RouteList routes = new RouteList();
+		
+		int[] blocks = new int[200];
+		for (int i = 0; i < blocks.length; i++) {
+			blocks[i] = (1 + random.nextInt(223)) << 24;
+		}
+		
+		for (int i = 0; i < count; i++) {
+			int percentile = random.nextInt(100);
+			int length;
+			
+			if (percentile < 55) length = 24;
+			else if (percentile < 63) length = 23;
+			else if (percentile < 73) length = 22;
+			else if (percentile < 79) length = 21;
+			else if (percentile < 85) length = 20;
+			else if (percentile < 90) length = 16;
+			else if (percentile < 96) length = 17 + random.nextInt(3);
+			else if (percentile < 98) length = 8 + random.nextInt(8);
+			else length = 25 + random.nextInt(8);
+			
+			int prefix = blocks[random.nextInt(blocks.length)] | (random.nextInt() >>> 8);
+			
+			routes.add(prefix, length, "hop" + random.nextInt(20));
+		}
+		
+		return routes;
+	}
+}
@@ -0,0 +1,101 @@
+package main;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/********************************************************************
+ * Checks that Trie.addAll() publishes the routes at once: readers
+ * looking up addresses under the new routes while they load must
+ * see either none or all of them.
+ *
+ * @author agent
+ * @version Oct 18, 2026
+ *******************************************************************/
+public class TrieAddAllTest {
+	
+	private static final int ROUNDS = 5;
+	private static final int READERS = 3;
+	private static final int ROUTES = 100000;
+	private static final int PROBES = 256;
+	
+	public static void main(String[] args) throws Exception {
+		Random random = new Random(1);
+		
+		for (int round = 0; round < ROUNDS; round++) {
+			RouteList routes = new RouteList();
+			int[] probes = new int[PROBES];
+			
+			for (int i = 0; i < ROUTES; i++) {
+				
+				/* Some no longer than the first stride, most deeper */
+				int length = i % 10 == 0 ? 8 + random.nextInt(9) : 17 + random.nextInt(16);
+				int prefix = random.nextInt();
+				
+				routes.add(prefix, length, "hop" + (i % 8));
+			}
+			
+			for (int i = 0; i < PROBES; i++) {
+				probes[i] = routes.getPrefix(i * (ROUTES / PROBES));
+			}
+			
+			check(new Trie(new int[] {16, 8, 8}), routes, probes);
+		}
+		
+		System.out.println("TrieAddAllTest passed");
+	}
+	
+	/****************************************************************
+	 * Loads the routes while readers look up the probes, failing if
+	 * a pass of a reader during which no version was published saw
+	 * some but not all of the probes matched.
+	 ***************************************************************/
+	private static void check(final Trie trie, RouteList routes,
+			final int[] probes) throws InterruptedException {
+		
+		final AtomicBoolean loaded = new AtomicBoolean();
+		final AtomicInteger partial = new AtomicInteger();
+		
+		Thread[] readers = new Thread[READERS];
+		
+		for (int r = 0; r < READERS; r++) {
+			readers[r] = new Thread() {
+				public void run() {
+					boolean last = false;
+					
+					while (!last) {
+						last = loaded.get();
+						
+						int before = trie.getVersion();
+						int matched = 0;
+						
+						for (int probe : probes) {
+							if (trie.lookUp(probe) != NextHopTable.NO_MATCH) matched++;
+						}
+						
+						if (trie.getVersion() == before && matched != 0
+								&& matched != probes.length) {
+							partial.incrementAndGet();
+						}
+					}
+				}
+			};
+			readers[r].start();
+		}
+		
+		trie.addAll(routes);
+		loaded.set(true);
+		
+		for (Thread reader : readers) reader.join();
+		
+		if (partial.get() > 0) {
+			throw new AssertionError(partial.get() + " lookup passes saw a partial load");
+		}
+		
+		for (int probe : probes) {
+			if (trie.lookUp(probe) == NextHopTable.NO_MATCH) {
+				throw new AssertionError("Route missing after the load");
+			}
+		}
+	}
+}